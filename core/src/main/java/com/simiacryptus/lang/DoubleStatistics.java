@@ -44,6 +44,18 @@ public class DoubleStatistics extends DoubleSummaryStatistics {
   private double sumOfSquare = 0.0d;
   private double sumOfSquareCompensation; // Low order bits of sum
 
+  public DoubleStatistics() {
+  }
+
+  /**
+   * Reconstructs statistics from aggregates accumulated elsewhere.
+   */
+  public DoubleStatistics(long count, double min, double max, double sum, double sumOfSquare) {
+    super(count, min, max, sum);
+    this.simpleSumOfSquare = sumOfSquare;
+    this.sumOfSquare = sumOfSquare;
+  }
+
   public final double getStandardDeviation() {
     return getCount() > 0 ? Math.sqrt(getSumOfSquare() / getCount() - Math.pow(getAverage(), 2)) : 0.0d;
   }
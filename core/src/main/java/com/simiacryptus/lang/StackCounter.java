@@ -23,37 +23,136 @@ import com.simiacryptus.ref.lang.RefAware;
 import com.simiacryptus.ref.lang.RefIgnore;
 
 import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Aggregates a quantity by the call stacks that reported it, both per frame and along full call paths.
+ * <p>
+ * By default every {@link #increment(long)} is recorded. With {@link #setSampleInterval(long, boolean)} calls are
+ * sampled at randomized intervals and each sample is weighted by the inverse of its sampling probability, so sums remain
+ * unbiased estimates of the true totals while the stack walk is paid only occasionally. All aggregation uses striped
+ * adders and never locks.
+ */
 @RefIgnore
 public class StackCounter {
+  private static final StackWalker stackWalker = StackWalker.getInstance();
 
   @Nonnull
-  Map<StackFrame, DoubleStatistics> stats = new ConcurrentHashMap<>();
+  final Map<StackFrame, FrameStatistics> stats = new ConcurrentHashMap<>();
+  @Nonnull
+  private final CallNode root = new CallNode(null);
+  private final ThreadLocal<long[]> sampler = new ThreadLocal<>();
+  private volatile long sampleInterval = 0;
+  private volatile boolean sampleByValue = true;
+  private volatile int maxDepth = Integer.MAX_VALUE;
 
   public static String toString(@Nonnull final @RefAware StackCounter left,
                                 @Nonnull final @RefAware StackCounter right,
                                 @Nonnull final @RefAware BiFunction<DoubleStatistics, DoubleStatistics, Number> fn) {
+    Map<StackFrame, DoubleStatistics> leftStats = left.getStats();
+    Map<StackFrame, DoubleStatistics> rightStats = right.getStats();
     Comparator<StackFrame> comparing = Comparator.comparing(key -> {
-      return -fn.apply(left.stats.get(key), right.stats.get(key)).doubleValue();
+      return -fn.apply(leftStats.get(key), rightStats.get(key)).doubleValue();
     });
     comparing = comparing.thenComparing(key -> key.toString());
-    return Stream.concat(left.stats.keySet().stream(), right.stats.keySet().stream()).distinct()
-        .filter(k -> left.stats.containsKey(k) && right.stats.containsKey(k)).sorted(comparing)
-        .map(key -> String.format("%s - %s", key.toString(), fn.apply(left.stats.get(key), right.stats.get(key))))
+    return Stream.concat(leftStats.keySet().stream(), rightStats.keySet().stream()).distinct()
+        .filter(k -> leftStats.containsKey(k) && rightStats.containsKey(k)).sorted(comparing)
+        .map(key -> String.format("%s - %s", key.toString(), fn.apply(leftStats.get(key), rightStats.get(key))))
         .limit(100).reduce((a, b) -> a + "\n" + b).orElse("");
   }
 
+  public long getSampleInterval() {
+    return sampleInterval;
+  }
+
+  /**
+   * Records on average one call per {@code interval}, measured either in the values passed to {@link #increment(long)}
+   * (like an allocation sampler that samples every N bytes, so large values are more likely to be caught) or, if
+   * {@code byValue} is false, in calls (1-in-N). Gaps between samples are drawn from an exponential distribution so that
+   * periodic call patterns do not alias with the interval. An interval of zero records every call.
+   */
+  @Nonnull
+  public StackCounter setSampleInterval(long interval, boolean byValue) {
+    this.sampleByValue = byValue;
+    this.sampleInterval = Math.max(0, interval);
+    return this;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Limits how many frames, counted from the reporting call, are walked for each sample.
+   */
+  @Nonnull
+  public StackCounter setMaxDepth(int maxDepth) {
+    this.maxDepth = Math.max(1, maxDepth);
+    return this;
+  }
+
   public void increment(final long length) {
-    final StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-    for (@Nonnull final StackTraceElement frame : stackTrace) {
-      stats.computeIfAbsent(new StackFrame(frame), f -> new DoubleStatistics()).accept(length);
+    double weight = length;
+    long interval = sampleInterval;
+    if (interval > 0) {
+      long[] remaining = sampler.get();
+      if (null == remaining) {
+        remaining = new long[]{nextGap(interval)};
+        sampler.set(remaining);
+      }
+      remaining[0] -= sampleByValue ? length : 1;
+      if (remaining[0] > 0)
+        return;
+      remaining[0] = nextGap(interval);
+      weight = sampleByValue ? length / -Math.expm1(-(double) length / interval) : (double) length * interval;
     }
+    record(stackWalker.walk(frames -> frames
+        .dropWhile(frame -> frame.getClassName().equals(StackCounter.class.getName()))
+        .limit(maxDepth)
+        .map(StackFrame::new)
+        .collect(Collectors.toList())), weight);
+  }
+
+  /**
+   * Per-frame statistics. In sampling mode counts are numbers of samples, while sums estimate the reported totals.
+   */
+  @Nonnull
+  public Map<StackFrame, DoubleStatistics> getStats() {
+    HashMap<StackFrame, DoubleStatistics> snapshot = new HashMap<>();
+    stats.forEach((frame, statistics) -> snapshot.put(frame, statistics.toDoubleStatistics()));
+    return snapshot;
+  }
+
+  /**
+   * Writes the recorded call paths in the collapsed-stack format read by flame graph tools: one line per distinct
+   * path, outermost frame first and frames separated by semicolons, followed by the total value recorded there.
+   */
+  public void writeCollapsedStacks(@Nonnull final @RefAware PrintStream out) {
+    root.writeCollapsed(out, "");
+  }
+
+  @Nonnull
+  public String toCollapsedStacks() {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (PrintStream out = new PrintStream(buffer)) {
+      writeCollapsedStacks(out);
+    }
+    return buffer.toString();
   }
 
   @Override
@@ -65,7 +164,7 @@ public class StackCounter {
     Comparator<Map.Entry<StackFrame, DoubleStatistics>> comparing = Comparator
         .comparing(e -> -fn.apply(e.getValue()).doubleValue());
     comparing = comparing.thenComparing(Comparator.comparing(e -> e.getKey().toString()));
-    return stats.entrySet().stream().sorted(comparing)
+    return getStats().entrySet().stream().sorted(comparing)
         .map(e -> String.format("%s - %s", e.getKey().toString(), fn.apply(e.getValue()))).limit(100)
         .reduce((a, b) -> a + "\n" + b).orElse(super.toString());
   }
@@ -81,6 +180,24 @@ public class StackCounter {
     return (int) value.getSum();
   }
 
+  private static long nextGap(long interval) {
+    return Math.max(1, (long) Math.ceil(-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * interval));
+  }
+
+  private void record(@Nonnull List<StackFrame> frames, double weight) {
+    CallNode node = root;
+    for (int i = frames.size() - 1; i >= 0; i--) {
+      StackFrame frame = frames.get(i);
+      FrameStatistics statistics = stats.get(frame);
+      if (null == statistics) {
+        statistics = stats.computeIfAbsent(frame, f -> new FrameStatistics());
+      }
+      statistics.accept(weight);
+      node = node.child(frame);
+    }
+    node.self.add(weight);
+  }
+
   @RefIgnore
   public static class StackFrame {
     public final String declaringClass;
@@ -92,6 +209,10 @@ public class StackCounter {
       this(frame.getClassName(), frame.getMethodName(), frame.getFileName(), frame.getLineNumber());
     }
 
+    public StackFrame(@Nonnull final @RefAware StackWalker.StackFrame frame) {
+      this(frame.getClassName(), frame.getMethodName(), frame.getFileName(), frame.getLineNumber());
+    }
+
     public StackFrame(final @RefAware String declaringClass,
                       final @RefAware String methodName,
                       final @RefAware String fileName, final int lineNumber) {
@@ -134,4 +255,67 @@ public class StackCounter {
       return String.format("%s.%s(%s:%s)", declaringClass, methodName, fileName, lineNumber);
     }
   }
+
+  /**
+   * Lock-free equivalent of {@link DoubleStatistics} for one frame.
+   */
+  @RefIgnore
+  private static final class FrameStatistics {
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAdder sumOfSquare = new DoubleAdder();
+    private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+    void accept(double value) {
+      min.accumulate(value);
+      max.accumulate(value);
+      sum.add(value);
+      sumOfSquare.add(value * value);
+      count.increment();
+    }
+
+    @Nonnull
+    DoubleStatistics toDoubleStatistics() {
+      long count = this.count.sum();
+      double min = this.min.get();
+      double max = this.max.get();
+      if (count <= 0 || min > max)
+        return new DoubleStatistics();
+      return new DoubleStatistics(count, min, max, sum.sum(), sumOfSquare.sum());
+    }
+  }
+
+  /**
+   * One node of the call tree, keyed by the path of frames from the outermost caller.
+   */
+  @RefIgnore
+  private static final class CallNode {
+    private final StackFrame frame;
+    private final Map<StackFrame, CallNode> children = new ConcurrentHashMap<>();
+    private final DoubleAdder self = new DoubleAdder();
+
+    CallNode(StackFrame frame) {
+      this.frame = frame;
+    }
+
+    @Nonnull
+    CallNode child(@Nonnull StackFrame frame) {
+      CallNode child = children.get(frame);
+      return null != child ? child : children.computeIfAbsent(frame, CallNode::new);
+    }
+
+    void writeCollapsed(@Nonnull PrintStream out, @Nonnull String path) {
+      long value = Math.round(self.sum());
+      if (value > 0 && !path.isEmpty()) {
+        out.println(path + " " + value);
+      }
+      List<CallNode> sorted = new ArrayList<>(children.values());
+      sorted.sort(Comparator.comparing(node -> node.frame.toString()));
+      for (CallNode child : sorted) {
+        String name = child.frame.declaringClass + "." + child.frame.methodName;
+        child.writeCollapsed(out, path.isEmpty() ? name : path + ";" + name);
+      }
+    }
+  }
 }
@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -46,8 +47,26 @@ public class RefSettings implements Settings {
   public final boolean watchEnable = get("WATCH_ENABLE", true);
   public final boolean watchCreation = get("WATCH_CREATE", false);
   public final boolean lifecycleDebug = get("DEBUG_LIFECYCLE", false);
+  public final boolean cleanerEnable = get("CLEANER_ENABLE", false);
+  public final int biasSweepMillis = get("BIAS_SWEEP_MILLIS", 100);
+  public final int lifecycleSampleRate = get("LIFECYCLE_SAMPLE_RATE", 0);
+  public final boolean iterativeFree = get("ITERATIVE_FREE", false);
+  public final int parallelArrayThreshold = get("PARALLEL_ARRAY_THRESHOLD", Integer.MAX_VALUE);
+  public final int asyncFreeThreads = get("ASYNC_FREE_THREADS", 1);
+  public final int asyncFreeQueueSize = get("ASYNC_FREE_QUEUE", 1024);
+  public final int recycleMagazineSize = get("RECYCLE_MAGAZINE_SIZE", 0);
+  public final boolean recycleCheck = get("RECYCLE_CHECK", true);
+  public final int offHeapAlignment = get("OFFHEAP_ALIGNMENT", 64);
+  public final long offHeapBudget = get("OFFHEAP_BUDGET", Long.MAX_VALUE);
+  public final long recycleBudget = get("RECYCLE_BUDGET", Long.MAX_VALUE);
+  public final double recycleHeapThreshold = get("RECYCLE_HEAP_THRESHOLD", 0.0);
+  public final double recycleEvictFraction = get("RECYCLE_EVICT_FRACTION", 0.5);
+  public final boolean recycleJmx = get("RECYCLE_JMX", false);
+  public final boolean streamFusion = get("STREAM_FUSION", false);
   @Nonnull
   public final PersistanceMode doubleCacheMode = get("DOUBLE_CACHE_MODE", PersistanceMode.WEAK);
+  @Nonnull
+  public final PersistanceMode directCacheMode = get("DIRECT_CACHE_MODE", PersistanceMode.STRONG);
   private final Set<String> watchedClasses = Stream.<String>of(
 //          "com.simiacryptus.mindseye.lang.ConstantResult"
 //        "com.simiacryptus.mindseye.network.PipelineNetwork"
@@ -57,6 +76,19 @@ public class RefSettings implements Settings {
 //      "com.simiacryptus.mindseye.lang.State",
 //      "com.simiacryptus.mindseye.network.InnerNode"
   ).filter(x -> x != null).collect(Collectors.toSet());
+  private final ClassValue<Boolean> lifecycleDebugClasses = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      String key = type.getCanonicalName();
+      return watchedClasses.contains(key) || (lifecycleDebug && !ignoredClasses.contains(key));
+    }
+  };
+  private final ClassValue<Boolean> ignoredClassValues = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return ignoredClasses.contains(type.getCanonicalName());
+    }
+  };
 
   private RefSettings() {
     System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism",
@@ -81,8 +113,18 @@ public class RefSettings implements Settings {
   }
 
   public boolean isLifecycleDebug(Class<? extends ReferenceCounting> objClass) {
-    String key = objClass.getCanonicalName();
-    return watchedClasses.contains(key) || (lifecycleDebug && !ignoredClasses.contains(key));
+    return lifecycleDebugClasses.get(objClass);
+  }
+
+  /**
+   * Selects roughly one in {@link #lifecycleSampleRate} instances of each class for lifecycle tracing, so leak
+   * attribution can stay enabled at a bounded cost. A rate of zero disables sampling.
+   */
+  public boolean isLifecycleSampled(Class<? extends ReferenceCounting> objClass) {
+    int rate = lifecycleSampleRate;
+    if (rate <= 0) return false;
+    if (rate > 1 && 0 != ThreadLocalRandom.current().nextInt(rate)) return false;
+    return !ignoredClassValues.get(objClass);
   }
 
 }
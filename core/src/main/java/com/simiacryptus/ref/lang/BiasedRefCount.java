@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link ReferenceCountingBase} subclass for biased reference counting: the thread that creates an instance
+ * counts its own addRef/freeRef calls in a plain field and only publishes to the shared atomic count when its local
+ * count reaches zero or when another thread has released more references than it took. Objects released that way
+ * are merged by the owner on its next biased free, or by any thread once the owner has terminated. A live owner
+ * that hands objects off and then stops freeing biased objects should call
+ * {@link ReferenceCountingBase#flushBiasedRefs()}, otherwise those objects wait for its next free.
+ */
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface BiasedRefCount {
+}
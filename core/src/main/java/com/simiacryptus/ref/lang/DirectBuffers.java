@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.simiacryptus.ref.RefSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Allocates aligned, native-order direct buffers against a global off-heap budget and releases them explicitly.
+ * Each buffer's backing memory is returned as soon as {@link #free(Buffer)} is called, rather than whenever the
+ * garbage collector gets to it; buffers that are dropped without being freed are released by a {@link Cleaner} once
+ * they become unreachable, so the budget never leaks.
+ */
+@RefIgnore
+public final class DirectBuffers {
+  private static final Logger logger = LoggerFactory.getLogger(DirectBuffers.class);
+  private static final int ALIGNMENT = RefSettings.INSTANCE().offHeapAlignment;
+  private static final long BUDGET = RefSettings.INSTANCE().offHeapBudget;
+  private static final AtomicLong reserved = new AtomicLong();
+  private static final AtomicLong leaked = new AtomicLong();
+  private static final Map<Buffer, Allocation> allocations = new MapMaker().weakKeys().makeMap();
+  private static final Cleaner cleaner = Cleaner.create(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("direct-buffer-cleaner-%d").build());
+  @Nullable
+  private static final MethodHandle invokeCleaner = findInvokeCleaner();
+
+  static {
+    if (ALIGNMENT < 1 || Integer.bitCount(ALIGNMENT) != 1)
+      throw new IllegalStateException(String.format("Off-heap alignment must be a power of two: %d", ALIGNMENT));
+  }
+
+  private DirectBuffers() {
+  }
+
+  /**
+   * Bytes currently reserved against the budget, including alignment padding.
+   */
+  public static long getReservedBytes() {
+    return reserved.get();
+  }
+
+  public static long getBudget() {
+    return BUDGET;
+  }
+
+  public static int getAlignment() {
+    return ALIGNMENT;
+  }
+
+  /**
+   * Number of buffers that were released by the cleaner because they became unreachable without being freed.
+   */
+  public static long getLeaked() {
+    return leaked.get();
+  }
+
+  @Nonnull
+  public static DoubleBuffer allocateDoubles(long length) {
+    return allocate(length * Double.BYTES, ByteBuffer::asDoubleBuffer);
+  }
+
+  @Nonnull
+  public static FloatBuffer allocateFloats(long length) {
+    return allocate(length * Float.BYTES, ByteBuffer::asFloatBuffer);
+  }
+
+  @Nonnull
+  public static ByteBuffer allocateBytes(long length) {
+    return allocate(length, Function.identity());
+  }
+
+  /**
+   * Releases the memory behind a buffer obtained from this class. The buffer, and any view of it, must not be used
+   * afterwards.
+   *
+   * @throws IllegalArgumentException if the buffer was not allocated here, or has already been freed
+   */
+  public static void free(@Nonnull Buffer buffer) {
+    Allocation allocation = allocations.remove(buffer);
+    if (null == allocation)
+      throw new IllegalArgumentException("Not a live buffer allocated by DirectBuffers");
+    allocation.explicit = true;
+    allocation.cleanable.clean();
+  }
+
+  @Nonnull
+  private static <B extends Buffer> B allocate(long bytes, @Nonnull Function<ByteBuffer, B> view) {
+    long padded = ((bytes + ALIGNMENT - 1) & -ALIGNMENT) + ALIGNMENT - 1;
+    if (bytes < 0 || padded > Integer.MAX_VALUE)
+      throw new IllegalArgumentException(String.format("Cannot allocate %d bytes in one direct buffer", bytes));
+    reserve(padded);
+    ByteBuffer base;
+    try {
+      base = ByteBuffer.allocateDirect((int) padded);
+    } catch (Throwable e) {
+      reserved.addAndGet(-padded);
+      throw e;
+    }
+    ByteBuffer aligned = base.alignedSlice(ALIGNMENT);
+    aligned.limit((int) bytes);
+    B buffer = view.apply(aligned.slice().order(ByteOrder.nativeOrder()));
+    Allocation allocation = new Allocation(base, padded);
+    allocation.cleanable = cleaner.register(buffer, allocation);
+    allocations.put(buffer, allocation);
+    return buffer;
+  }
+
+  private static void reserve(long bytes) {
+    while (true) {
+      long prev = reserved.get();
+      if (prev + bytes > BUDGET)
+        throw new OutOfMemoryError(String.format("Off-heap budget exceeded: %d + %d > %d bytes", prev, bytes, BUDGET));
+      if (reserved.compareAndSet(prev, prev + bytes))
+        return;
+    }
+  }
+
+  @Nullable
+  private static MethodHandle findInvokeCleaner() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(field.get(null));
+    } catch (Throwable e) {
+      logger.warn("Explicit deallocation of direct buffers is unavailable; memory will be returned by the garbage collector", e);
+      return null;
+    }
+  }
+
+  /**
+   * Cleanup action for one allocation. It holds the base buffer, never the view handed out, so it does not keep the
+   * view reachable.
+   */
+  @RefIgnore
+  private static final class Allocation implements Runnable {
+    private final long bytes;
+    private final AtomicBoolean released = new AtomicBoolean();
+    @Nullable
+    private ByteBuffer base;
+    private Cleaner.Cleanable cleanable;
+    private volatile boolean explicit;
+
+    private Allocation(@Nonnull ByteBuffer base, long bytes) {
+      this.base = base;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public void run() {
+      if (!released.compareAndSet(false, true))
+        return;
+      if (!explicit)
+        leaked.incrementAndGet();
+      ByteBuffer base = this.base;
+      this.base = null;
+      if (null != invokeCleaner && null != base) {
+        try {
+          invokeCleaner.invokeExact(base);
+        } catch (Throwable e) {
+          logger.warn("Error releasing direct buffer", e);
+        }
+      }
+      reserved.addAndGet(-bytes);
+    }
+  }
+}
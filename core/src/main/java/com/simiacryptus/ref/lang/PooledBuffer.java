@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * A reference-counted lease on a buffer drawn from a {@link RecycleBin}. When the last reference is freed the backing
+ * array or buffer goes back to its bin, so callers never pair {@code obtain} and {@code recycle} by hand.
+ * <p>
+ * {@link #slice(long, long)} and {@link #duplicate()} return views onto the same storage. Each view holds a reference
+ * on the buffer that owns the storage, so the storage is recycled only once every view has been freed.
+ */
+@RefIgnore
+@SuppressWarnings("unused")
+public class PooledBuffer<T> extends ReferenceCountingBase {
+  @Nonnull
+  private final RecycleBin<T> bin;
+  @Nonnull
+  private final T data;
+  private final long capacity;
+  private final long offset;
+  private final long length;
+  @Nullable
+  private final PooledBuffer<T> owner;
+  @Nonnull
+  private final Release<T> release;
+
+  protected PooledBuffer(@Nonnull RecycleBin<T> bin, @Nonnull T data, long capacity, long offset, long length,
+                         @Nullable PooledBuffer<T> owner) {
+    this.bin = bin;
+    this.data = data;
+    this.capacity = capacity;
+    this.offset = offset;
+    this.length = length;
+    this.owner = owner;
+    this.release = new Release<>(bin, data, capacity, owner);
+    addReclaimAction(release);
+  }
+
+  @Nonnull
+  public static <T> PooledBuffer<T> obtain(@Nonnull RecycleBin<T> bin, long length) {
+    T data = bin.obtain(length);
+    return new PooledBuffer<>(bin, data, capacity(data, bin.getSizeClass().ceil(length)), 0, length, null);
+  }
+
+  @Nonnull
+  public static PooledBuffer<double[]> doubles(long length) {
+    return obtain(RecycleBin.DOUBLES, length);
+  }
+
+  @Nonnull
+  public static PooledBuffer<float[]> floats(long length) {
+    return obtain(RecycleBin.FLOATS, length);
+  }
+
+  @Nonnull
+  public static PooledBuffer<DoubleBuffer> directDoubles(long length) {
+    return obtain(RecycleBin.DIRECT_DOUBLES, length);
+  }
+
+  @Nonnull
+  public static PooledBuffer<FloatBuffer> directFloats(long length) {
+    return obtain(RecycleBin.DIRECT_FLOATS, length);
+  }
+
+  /**
+   * The backing storage, shared by every view. It may be longer than this view; only the elements from
+   * {@link #getOffset()} for {@link #length()} elements belong to it. The storage must not be used after this view is
+   * freed.
+   */
+  @Nonnull
+  public T getData() {
+    assertAlive();
+    return data;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long length() {
+    return length;
+  }
+
+  /**
+   * The length the storage is recycled under. Arrays and NIO buffers report their own length, which holds whatever the
+   * bin's size class is when they are freed; other types fall back to the size class of the request.
+   */
+  private static long capacity(@Nonnull Object data, long requested) {
+    if (data instanceof Buffer) return ((Buffer) data).capacity();
+    if (data.getClass().isArray()) return Array.getLength(data);
+    return requested;
+  }
+
+  @Nonnull
+  public PooledBuffer<T> slice(long offset, long length) {
+    assertAlive();
+    if (offset < 0 || length < 0 || offset + length > this.length)
+      throw new IndexOutOfBoundsException(String.format("Slice [%d, %d) of buffer with length %d", offset, offset + length, this.length));
+    PooledBuffer<T> owner = null == this.owner ? this : this.owner;
+    return new PooledBuffer<>(bin, data, capacity, this.offset + offset, length, owner.addRef());
+  }
+
+  @Nonnull
+  public PooledBuffer<T> duplicate() {
+    return slice(0, length);
+  }
+
+  @Nonnull
+  @Override
+  public PooledBuffer<T> addRef() {
+    return (PooledBuffer<T>) super.addRef();
+  }
+
+  @Override
+  protected void _free() {
+    release.run();
+    super._free();
+  }
+
+  /**
+   * Gives the storage back: a view releases its owner, and the owner recycles the storage into its bin. Kept apart
+   * from the buffer so a leaked buffer can still be released in Cleaner mode.
+   */
+  private static final class Release<T> implements Runnable {
+    @Nonnull
+    private final RecycleBin<T> bin;
+    @Nonnull
+    private final T data;
+    private final long capacity;
+    @Nullable
+    private final PooledBuffer<T> owner;
+
+    private Release(@Nonnull RecycleBin<T> bin, @Nonnull T data, long capacity, @Nullable PooledBuffer<T> owner) {
+      this.bin = bin;
+      this.data = data;
+      this.capacity = capacity;
+      this.owner = owner;
+    }
+
+    @Override
+    public void run() {
+      if (null != owner) {
+        owner.freeRef();
+      } else {
+        bin.recycle(data, capacity);
+      }
+    }
+  }
+}
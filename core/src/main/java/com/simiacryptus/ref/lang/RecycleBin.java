@@ -19,6 +19,7 @@
 
 package com.simiacryptus.ref.lang;
 
+import com.google.common.collect.MapMaker;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.simiacryptus.lang.StackCounter;
 import com.simiacryptus.ref.RefSettings;
@@ -27,17 +28,50 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 @RefIgnore
 @SuppressWarnings("unused")
 public abstract class RecycleBin<T> {
 
+  private static final boolean RECYCLE_CHECK = RefSettings.INSTANCE().recycleCheck;
+  private static final long BUDGET = RefSettings.INSTANCE().recycleBudget;
+  /**
+   * Bins that currently hold pooled items. A bin joins when it pools an item and leaves once the sweep finds it empty,
+   * so the registry never keeps an idle bin, or anything it pooled, reachable; the sweep, {@link #shrink(double)} and
+   * budget eviction only visit bins that have something to release.
+   */
+  private static final Set<RecycleBin<?>> bins = ConcurrentHashMap.newKeySet();
+  private static final LongAdder pooledBytes = new LongAdder();
+  private static final AtomicBoolean evicting = new AtomicBoolean();
+  private static final AtomicBoolean sweeping = new AtomicBoolean();
+  /**
+   * Shared source for bulk-zeroing direct buffers on reuse.
+   */
+  private static final double[] ZERO_DOUBLES = new double[4096];
+  private static final float[] ZERO_FLOATS = new float[4096];
   public static final RecycleBin<double[]> DOUBLES = new RecycleBin<double[]>() {
     @Nonnull
     @Override
@@ -47,10 +81,15 @@ public abstract class RecycleBin<T> {
 
     @Override
     public void reset(@Nonnull final double[] data, long size) {
-      assert data.length == size;
+      assert data.length >= size;
       Arrays.fill(data, 0);
     }
 
+    @Override
+    public int getBytesPerElement() {
+      return 8;
+    }
+
     @Override
     protected void free(double[] obj) {
     }
@@ -64,17 +103,106 @@ public abstract class RecycleBin<T> {
 
     @Override
     public void reset(@Nonnull final float[] data, long size) {
-      assert data.length == size;
+      assert data.length >= size;
       Arrays.fill(data, 0);
     }
 
+    @Override
+    public int getBytesPerElement() {
+      return 4;
+    }
+
     @Override
     protected void free(float[] obj) {
     }
   }.setPersistanceMode(RefSettings.INSTANCE().doubleCacheMode);
+  public static final RecycleBin<DoubleBuffer> DIRECT_DOUBLES = new RecycleBin<DoubleBuffer>() {
+    @Nonnull
+    @Override
+    public DoubleBuffer create(final long length) {
+      return DirectBuffers.allocateDoubles(length);
+    }
+
+    @Nullable
+    @Override
+    public DoubleBuffer copyOf(@Nullable final DoubleBuffer original, long size) {
+      if (null == original)
+        return null;
+      final DoubleBuffer copy = obtain(size);
+      final DoubleBuffer source = original.duplicate();
+      source.position(0);
+      source.limit((int) size);
+      final DoubleBuffer target = copy.duplicate();
+      target.position(0);
+      target.put(source);
+      return copy;
+    }
+
+    @Override
+    public void reset(@Nonnull final DoubleBuffer data, long size) {
+      assert data.capacity() >= size;
+      data.clear();
+      while (data.hasRemaining()) {
+        data.put(ZERO_DOUBLES, 0, Math.min(ZERO_DOUBLES.length, data.remaining()));
+      }
+      data.clear();
+    }
+
+    @Override
+    public int getBytesPerElement() {
+      return 8;
+    }
+
+    @Override
+    protected void free(@Nonnull DoubleBuffer obj) {
+      DirectBuffers.free(obj);
+    }
+  }.setPersistanceMode(RefSettings.INSTANCE().directCacheMode);
+  public static final RecycleBin<FloatBuffer> DIRECT_FLOATS = new RecycleBin<FloatBuffer>() {
+    @Nonnull
+    @Override
+    public FloatBuffer create(final long length) {
+      return DirectBuffers.allocateFloats(length);
+    }
+
+    @Nullable
+    @Override
+    public FloatBuffer copyOf(@Nullable final FloatBuffer original, long size) {
+      if (null == original)
+        return null;
+      final FloatBuffer copy = obtain(size);
+      final FloatBuffer source = original.duplicate();
+      source.position(0);
+      source.limit((int) size);
+      final FloatBuffer target = copy.duplicate();
+      target.position(0);
+      target.put(source);
+      return copy;
+    }
+
+    @Override
+    public void reset(@Nonnull final FloatBuffer data, long size) {
+      assert data.capacity() >= size;
+      data.clear();
+      while (data.hasRemaining()) {
+        data.put(ZERO_FLOATS, 0, Math.min(ZERO_FLOATS.length, data.remaining()));
+      }
+      data.clear();
+    }
+
+    @Override
+    public int getBytesPerElement() {
+      return 4;
+    }
+
+    @Override
+    protected void free(@Nonnull FloatBuffer obj) {
+      DirectBuffers.free(obj);
+    }
+  }.setPersistanceMode(RefSettings.INSTANCE().directCacheMode);
   protected static final Logger logger = LoggerFactory.getLogger(RecycleBin.class);
   private static volatile ScheduledExecutorService garbageTruck;
-  private final Map<Long, ConcurrentLinkedDeque<ObjectWrapper>> buckets = new ConcurrentHashMap<>();
+  private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
   private final StackCounter allocations = new StackCounter();
   private final StackCounter frees = new StackCounter();
   private final StackCounter recycle_put = new StackCounter();
@@ -85,27 +213,143 @@ public abstract class RecycleBin<T> {
   private int minLengthPerBuffer = 16;
   private double maxLengthPerBuffer = 1e9;
   private int maxItemsPerBuffer = 100;
+  private SizeClass sizeClass = SizeClass.EXACT;
+  private int magazineSize = RefSettings.INSTANCE().recycleMagazineSize;
+  private final ThreadLocal<CacheHandle> threadCache = ThreadLocal.withInitial(CacheHandle::new);
+  /**
+   * Every thread's magazines, so clearing, eviction and the expiry sweep can reach items cached by other threads.
+   */
+  private final Set<ThreadCache> caches = ConcurrentHashMap.newKeySet();
+  /**
+   * Identity set of the items currently pooled, used to reject double recycling in constant time. Keys are weak so
+   * membership never keeps an item alive beyond what the persistence mode allows.
+   */
+  @Nullable
+  private final Set<Object> pooled = RECYCLE_CHECK ? Collections.newSetFromMap(new MapMaker().weakKeys().makeMap()) : null;
+  private final LongAdder pooledLength = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder allocationCount = new LongAdder();
+  private final LongAdder allocationNanos = new LongAdder();
+  private final LongAccumulator allocationMaxNanos = new LongAccumulator(Math::max, 0);
+  private final LongAdder allocationFailures = new LongAdder();
+  private final AtomicBoolean registered = new AtomicBoolean();
+
+  static {
+    installPressureListener(RefSettings.INSTANCE().recycleHeapThreshold, RefSettings.INSTANCE().recycleEvictFraction);
+    if (RefSettings.INSTANCE().recycleJmx) {
+      DOUBLES.registerMBean("DOUBLES");
+      FLOATS.registerMBean("FLOATS");
+      DIRECT_DOUBLES.registerMBean("DIRECT_DOUBLES");
+      DIRECT_FLOATS.registerMBean("DIRECT_FLOATS");
+    }
+  }
 
   protected RecycleBin() {
     super();
     purgeFreq = 10;
-    RecycleBin.getGarbageTruck().scheduleAtFixedRate(() -> {
-      buckets.forEach((k, v) -> {
-        ObjectWrapper poll;
-        ArrayList<ObjectWrapper> young = new ArrayList<>();
-        while (null != (poll = v.poll())) {
-          if (poll.age() > purgeFreq) {
-            T obj = poll.obj.get();
-            if (obj != null) {
-              freeItem(obj, k);
-            }
-          } else {
-            young.add(poll);
+    if (sweeping.compareAndSet(false, true)) {
+      RecycleBin.getGarbageTruck().scheduleWithFixedDelay(RecycleBin::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Bytes currently pooled across all bins, as reported by {@link #getBytesPerElement()}. Items whose weak or soft
+   * reference has been cleared are counted until the bin next visits them.
+   */
+  public static long getPooledBytes() {
+    return pooledBytes.sum();
+  }
+
+  /**
+   * Evicts roughly the given fraction of every bin's pooled bytes, least recently pooled and largest first.
+   *
+   * @return the number of bytes evicted
+   */
+  public static long shrink(double fraction) {
+    long evicted = 0;
+    for (RecycleBin<?> bin : bins) {
+      evicted += bin.evict((long) Math.ceil(bin.getPooledLength() * bin.getBytesPerElement() * fraction));
+    }
+    if (evicted > 0) {
+      logger.debug(String.format("Evicted %d pooled bytes", evicted));
+    }
+    return evicted;
+  }
+
+  /**
+   * Shrinks all bins whenever a heap pool is still above the given fraction of its maximum after a collection, so
+   * pooled memory gives way before allocations start failing. This sets JVM-wide collection usage thresholds on pools
+   * that have none, so it is opt-in through {@link RefSettings#recycleHeapThreshold}; zero, the default, disables it.
+   */
+  private static void installPressureListener(double threshold, double fraction) {
+    if (threshold <= 0)
+      return;
+    try {
+      boolean watching = false;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported())
+          continue;
+        long max = pool.getUsage().getMax();
+        if (max <= 0)
+          continue;
+        if (pool.getCollectionUsageThreshold() == 0) {
+          pool.setCollectionUsageThreshold((long) (max * threshold));
+        }
+        watching = true;
+      }
+      if (!watching)
+        return;
+      ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener((notification, handback) -> {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+          getGarbageTruck().execute(() -> shrink(fraction));
+        }
+      }, null, null);
+    } catch (Throwable e) {
+      logger.warn("Could not install memory pressure listener", e);
+    }
+  }
+
+  /**
+   * The one periodic expiry task shared by all bins.
+   */
+  private static void sweep() {
+    for (RecycleBin<?> bin : bins) {
+      bin.expire();
+      if (0 == bin.getPooledLength()) bin.deregister();
+    }
+  }
+
+  /**
+   * Schedules {@link #enforceBudget()} on the garbage truck once the pooled total exceeds the budget, so the recycling
+   * thread only pays for the check. At most one eviction pass is pending at a time.
+   */
+  private static void checkBudget() {
+    if (pooledBytes.sum() > BUDGET && evicting.compareAndSet(false, true)) {
+      getGarbageTruck().execute(RecycleBin::enforceBudget);
+    }
+  }
+
+  /**
+   * Evicts least recently pooled, largest items across all bins until the pooled total is back within the budget.
+   */
+  private static void enforceBudget() {
+    try {
+      while (pooledBytes.sum() > BUDGET) {
+        RecycleBin<?> victim = null;
+        double best = 0;
+        for (RecycleBin<?> bin : bins) {
+          double score = bin.victimScore();
+          if (score > best) {
+            best = score;
+            victim = bin;
           }
         }
-        v.addAll(young);
-      });
-    }, purgeFreq, purgeFreq, TimeUnit.SECONDS);
+        if (null == victim || 0 == victim.evict(1))
+          break;
+      }
+    } finally {
+      evicting.set(false);
+    }
   }
 
   public static ScheduledExecutorService getGarbageTruck() {
@@ -160,6 +404,132 @@ public abstract class RecycleBin<T> {
     return this;
   }
 
+  public SizeClass getSizeClass() {
+    return sizeClass;
+  }
+
+  /**
+   * Selects how requested lengths are grouped into buckets. With any mode other than {@link SizeClass#EXACT},
+   * {@link #obtain(long)} may return a buffer longer than requested; callers must rely on the requested length rather
+   * than the buffer's own, and should recycle buffers with their full capacity.
+   */
+  @Nonnull
+  public RecycleBin<T> setSizeClass(@Nonnull SizeClass sizeClass) {
+    this.sizeClass = sizeClass;
+    return this;
+  }
+
+  /**
+   * A point-in-time copy of this bin's counters. Counters are cumulative since the bin was created and are updated
+   * without locking, so a snapshot taken under load may be slightly inconsistent between fields.
+   */
+  @Nonnull
+  public RecycleBinStats getStats() {
+    ArrayList<RecycleBinStats.BucketStats> bucketStats = new ArrayList<>();
+    new TreeMap<>(buckets).forEach((length, bucket) -> {
+      long count = bucket.count.sum();
+      bucketStats.add(new RecycleBinStats.BucketStats(length, bucket.hits.sum(), bucket.misses.sum(),
+          bucket.recycles.sum(), bucket.evictions.sum(), count, count * length * getBytesPerElement()));
+    });
+    return new RecycleBinStats(bucketStats, rejections.sum(), allocationCount.sum(), allocationFailures.sum(),
+        allocationNanos.sum(), allocationMaxNanos.get());
+  }
+
+  /**
+   * Registers a {@link RecycleBinMXBean} for this bin with the platform MBean server under
+   * {@code com.simiacryptus.ref:type=RecycleBin,name="<name>"}. Registration failures are logged, not thrown.
+   */
+  @Nonnull
+  public RecycleBin<T> registerMBean(@Nonnull String name) {
+    try {
+      ObjectName objectName = new ObjectName("com.simiacryptus.ref:type=RecycleBin,name=" + ObjectName.quote(name));
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(new StandardMBean(new MXBean(), RecycleBinMXBean.class, true), objectName);
+      }
+    } catch (Throwable e) {
+      logger.warn(String.format("Could not register MBean for %s", name), e);
+    }
+    return this;
+  }
+
+  /**
+   * Fraction of {@link #obtain(long)} calls served from the pool, per bucket key.
+   */
+  @Nonnull
+  public Map<Long, Double> getHitRates() {
+    TreeMap<Long, Double> rates = new TreeMap<>();
+    buckets.forEach((length, bucket) -> {
+      long hits = bucket.hits.sum();
+      long total = hits + bucket.misses.sum();
+      if (total > 0) rates.put(length, (double) hits / total);
+    });
+    return rates;
+  }
+
+  public int getMagazineSize() {
+    return magazineSize;
+  }
+
+  /**
+   * Enables per-thread magazines of the given capacity in front of each bucket; zero disables them. A thread recycles
+   * into and obtains from its own magazines without touching shared state, exchanging whole magazines with the
+   * bucket's depot only when one fills or runs dry. Magazines hold strong references, so items cached this way are not
+   * subject to the persistence mode until they reach the depot's purge. {@link #clear()} frees every thread's
+   * magazines, eviction moves them to the depot once the depot has nothing left to evict, and the expiry sweep returns
+   * the magazines of terminated threads to the depot.
+   */
+  @Nonnull
+  public RecycleBin<T> setMagazineSize(int magazineSize) {
+    this.magazineSize = Math.max(0, magazineSize);
+    return this;
+  }
+
+  /**
+   * Size in bytes of one element of the pooled items, used for byte accounting and eviction.
+   */
+  public int getBytesPerElement() {
+    return 1;
+  }
+
+  /**
+   * Total length of the items currently pooled by this bin.
+   */
+  public long getPooledLength() {
+    return pooledLength.sum();
+  }
+
+  /**
+   * Evicts pooled items until at least the given number of bytes has been released or the bin is empty. Each step
+   * takes the bucket whose oldest item scores highest by age times length, so large idle buffers go first.
+   *
+   * @return the number of bytes evicted
+   */
+  public long evict(long bytes) {
+    long evicted = 0;
+    boolean flushed = false;
+    while (evicted < bytes) {
+      Map.Entry<Long, Bucket> victim = null;
+      double best = 0;
+      for (Map.Entry<Long, Bucket> e : buckets.entrySet()) {
+        double score = e.getValue().oldestAge() * e.getKey();
+        if (score > best) {
+          best = score;
+          victim = e;
+        }
+      }
+      if (null == victim) {
+        if (flushed || caches.isEmpty())
+          break;
+        flushCaches();
+        flushed = true;
+        continue;
+      }
+      evicted += victim.getValue().evictOldest(victim.getKey()) * getBytesPerElement();
+    }
+    return evicted;
+  }
+
   public int getPurgeFreq() {
     return purgeFreq;
   }
@@ -171,7 +541,7 @@ public abstract class RecycleBin<T> {
   }
 
   public long getSize() {
-    return this.buckets.entrySet().stream().mapToLong(e -> e.getKey() * e.getValue().size()).sum();
+    return getPooledLength();
   }
 
   @Nonnull
@@ -189,14 +559,26 @@ public abstract class RecycleBin<T> {
   }
 
   public long clear() {
-    Map<Long, ConcurrentLinkedDeque<ObjectWrapper>> buckets = this.buckets;
-    return buckets.keySet().stream().mapToLong(length -> {
-      ConcurrentLinkedDeque<ObjectWrapper> remove = buckets.remove(length);
-      if (null == remove || remove.isEmpty())
-        return 0;
-      return remove.stream().mapToLong(ref -> {
-        return freeItem(ref.obj.get(), length);
-      }).sum();
+    long cleared = 0;
+    for (ThreadCache cache : caches) {
+      cleared += cache.clear();
+    }
+    return cleared + buckets.entrySet().stream().mapToLong(e -> {
+      long length = e.getKey();
+      Bucket bucket = e.getValue();
+      long freed = 0;
+      Magazine magazine;
+      while (null != (magazine = bucket.full.poll())) {
+        freed += freeMagazine(bucket, magazine, length);
+        bucket.empty.add(magazine);
+      }
+      ObjectWrapper ref;
+      while (null != (ref = bucket.items.poll())) {
+        bucket.untrack(length, 1);
+        bucket.evictions.increment();
+        freed += freeItem(ref.obj.get(), length);
+      }
+      return freed;
     }).sum();
   }
 
@@ -215,8 +597,13 @@ public abstract class RecycleBin<T> {
   @Nonnull
   public T create(long length, int retries) {
     try {
+      long startTime = System.nanoTime();
       @Nonnull
       T result = create(length);
+      long elapsed = System.nanoTime() - startTime;
+      allocationCount.increment();
+      allocationNanos.add(elapsed);
+      allocationMaxNanos.accumulate(elapsed);
       @Nullable
       StackCounter stackCounter = getAllocations(length);
       if (null != stackCounter) {
@@ -224,6 +611,7 @@ public abstract class RecycleBin<T> {
       }
       return result;
     } catch (@Nonnull final Throwable e) {
+      allocationFailures.increment();
       if (retries <= 0)
         throw new RuntimeException(String.format("Could not allocate %d bytes", length), e);
     }
@@ -259,28 +647,59 @@ public abstract class RecycleBin<T> {
     return recycle_put;
   }
 
+  /**
+   * Samples profiled events rather than walking the stack for each one. See
+   * {@link StackCounter#setSampleInterval(long, boolean)}; with {@code byLength} the interval is in elements, otherwise
+   * in calls.
+   */
+  @Nonnull
+  public RecycleBin<T> setProfilingSampleInterval(long interval, boolean byLength) {
+    for (StackCounter counter : Arrays.asList(allocations, frees, recycle_put, recycle_get)) {
+      counter.setSampleInterval(interval, byLength);
+    }
+    return this;
+  }
+
+  /**
+   * Writes profiled allocation sites in collapsed-stack (flame graph) format.
+   */
+  public void printAllocationStacks(@Nonnull final @RefAware PrintStream out) {
+    allocations.writeCollapsedStacks(out);
+  }
+
   public boolean isProfiling(final long length) {
     return length > profilingThreshold;
   }
 
   public T obtain(final long length) {
-    final ConcurrentLinkedDeque<ObjectWrapper> bin = buckets.get(length);
+    final long key = sizeClass.ceil(length);
     @Nullable
     StackCounter stackCounter = getRecycle_get(length);
     if (null != stackCounter) {
       stackCounter.increment(length);
     }
-    if (null != bin) {
-      final ObjectWrapper ref = bin.poll();
-      if (null != ref) {
-        final T data = ref.obj.get();
-        if (null != data) {
-          reset(data, length);
-          return data;
-        }
+    if (magazineSize > 0) {
+      T data = threadCache.get().cache.obtain(key);
+      if (null != data) {
+        if (RECYCLE_CHECK) pooled.remove(data);
+        reset(data, key);
+        return data;
+      }
+    }
+    final Bucket bin = getBucket(key);
+    ObjectWrapper ref;
+    while (null != (ref = bin.items.pollLast())) {
+      bin.untrack(key, 1);
+      final T data = ref.obj.get();
+      if (null != data) {
+        if (RECYCLE_CHECK) pooled.remove(data);
+        bin.hits.increment();
+        reset(data, key);
+        return data;
       }
     }
-    return create(length, 1);
+    bin.misses.increment();
+    return create(key, 1);
   }
 
   public void printAllProfiling(@Nonnull final @RefAware PrintStream out) {
@@ -309,19 +728,21 @@ public abstract class RecycleBin<T> {
       if (null != stackCounter) {
         stackCounter.increment(size);
       }
-      ConcurrentLinkedDeque<ObjectWrapper> bin = getBin(size);
+      if (RECYCLE_CHECK && !pooled.add(data))
+        throw new IllegalStateException();
+      final long key = sizeClass.floor(size);
+      if (magazineSize > 0 && threadCache.get().cache.recycle(data, key)) {
+        return;
+      }
+      Bucket bucket = getBucket(key);
+      ConcurrentLinkedDeque<ObjectWrapper> bin = bucket.items;
       if (bin.size() < Math.min(Math.max(1, (int) (getMaxLengthPerBuffer() / size)), getMaxItemsPerBuffer())) {
-        //        synchronized (bin) {
-        //        }
-        boolean present = bin.stream().filter(x -> equals(x.obj.get(), data)).findAny().isPresent();
-        if (present)
-          throw new IllegalStateException();
-        else {
-          bin.add(new ObjectWrapper(wrap(data)));
-          return;
-        }
+        bin.add(new ObjectWrapper(wrap(data)));
+        bucket.track(key, 1);
+        return;
       }
     }
+    rejections.increment();
     freeItem(data, size);
   }
 
@@ -337,7 +758,7 @@ public abstract class RecycleBin<T> {
     if (null != stackCounter) {
       stackCounter.increment(size);
     }
-    ConcurrentLinkedDeque<ObjectWrapper> bin = getBin(size);
+    ConcurrentLinkedDeque<ObjectWrapper> bin = getBucket(sizeClass.floor(size)).items;
     return bin.size() < Math.min(Math.max(1, (int) (getMaxLengthPerBuffer() / size)), getMaxItemsPerBuffer());
   }
 
@@ -349,13 +770,122 @@ public abstract class RecycleBin<T> {
     if (null != stackCounter) {
       stackCounter.increment(size);
     }
-    if (null != obj)
+    if (null != obj) {
+      if (RECYCLE_CHECK) pooled.remove(obj);
       free(obj);
+    }
     return size;
   }
 
+  protected Bucket getBucket(long size) {
+    Bucket bucket = buckets.get(size);
+    return null != bucket ? bucket : buckets.computeIfAbsent(size, x -> new Bucket());
+  }
+
+  /**
+   * The queue of pooled items for one bucket length.
+   *
+   * @deprecated buckets now carry counters and magazine depots; use {@link #getBucket(long)}. Items added to or removed
+   * from this queue directly bypass the bin's accounting, and overriding this method no longer changes where the bin
+   * pools items.
+   */
+  @Deprecated
   protected ConcurrentLinkedDeque<ObjectWrapper> getBin(long size) {
-    return buckets.computeIfAbsent(size, x -> new ConcurrentLinkedDeque<>());
+    return getBucket(size).items;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected long freeMagazine(@Nonnull Bucket bucket, @Nonnull Magazine magazine, long size) {
+    long freed = 0;
+    while (magazine.count > 0) {
+      bucket.untrack(size, 1);
+      bucket.evictions.increment();
+      freed += freeItem((T) magazine.pop(), size);
+    }
+    return freed;
+  }
+
+  /**
+   * Frees items that have been pooled longer than {@link #getPurgeFreq()} seconds. Every item in a bucket has the same
+   * lifetime, so the queue is already in expiry order: this only inspects the cold end of each bucket and stops at the
+   * first live item, costing time proportional to what expires rather than to what is pooled, and never moving items
+   * that concurrent obtain or recycle calls may be touching.
+   */
+  private void expire() {
+    try {
+      reapCaches();
+      final int maxAge = purgeFreq;
+      buckets.forEach((length, bucket) -> {
+        ObjectWrapper item;
+        while (null != (item = bucket.items.peekFirst()) && item.age() > maxAge) {
+          if (bucket.items.removeFirstOccurrence(item)) {
+            bucket.untrack(length, 1);
+            bucket.evictions.increment();
+            T obj = item.obj.get();
+            if (obj != null) {
+              freeItem(obj, length);
+            }
+          }
+        }
+        Magazine magazine;
+        while (null != (magazine = bucket.full.peekLast()) && magazine.age() > maxAge) {
+          if (bucket.full.removeLastOccurrence(magazine)) {
+            freeMagazine(bucket, magazine, length);
+            bucket.empty.add(magazine);
+          }
+        }
+      });
+    } catch (Throwable e) {
+      logger.warn("Error expiring pooled items", e);
+    }
+  }
+
+  private void register() {
+    if (registered.compareAndSet(false, true)) {
+      bins.add(this);
+    }
+  }
+
+  /**
+   * Leaves the registry; a concurrent recycle that the sweep did not see registers the bin again.
+   */
+  private void deregister() {
+    bins.remove(this);
+    registered.set(false);
+    if (0 != getPooledLength()) register();
+  }
+
+  /**
+   * Eviction score of this bin's best victim, or zero if it holds nothing. Items held only in thread magazines have no
+   * age, so they score the smallest positive value; that keeps the bin eligible, and {@link #evict(long)} moves them
+   * to the depot.
+   */
+  private double victimScore() {
+    double best = 0;
+    for (Map.Entry<Long, Bucket> e : buckets.entrySet()) {
+      best = Math.max(best, e.getValue().oldestAge() * e.getKey() * getBytesPerElement());
+    }
+    return 0 == best && 0 < getPooledLength() && !caches.isEmpty() ? Double.MIN_VALUE : best;
+  }
+
+  /**
+   * Moves every thread's magazines to the depot, where they can be evicted.
+   */
+  private void flushCaches() {
+    for (ThreadCache cache : caches) {
+      cache.release();
+    }
+  }
+
+  /**
+   * Returns the magazines of terminated threads to the depot and forgets those threads.
+   */
+  private void reapCaches() {
+    for (ThreadCache cache : caches) {
+      if (null == cache.owner.get() && caches.remove(cache)) {
+        cache.release();
+      }
+    }
   }
 
   @Nullable
@@ -376,6 +906,334 @@ public abstract class RecycleBin<T> {
     logger.warn(String.format("Clearing memory freed %s/%s bytes", previous - after, max));
   }
 
+  /**
+   * Pooled items for one length. Items are added at the tail and obtained from the tail, so recently pooled (and likely
+   * cache-warm) items are reused first and the head always holds the oldest; full magazines likewise enter and leave the
+   * depot at its head.
+   */
+  @RefIgnore
+  protected class Bucket {
+    final ConcurrentLinkedDeque<ObjectWrapper> items = new ConcurrentLinkedDeque<>();
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder recycles = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder count = new LongAdder();
+    final ConcurrentLinkedDeque<Magazine> full = new ConcurrentLinkedDeque<>();
+    final ConcurrentLinkedDeque<Magazine> empty = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Trades a full magazine for an empty one. If the depot already holds as many items as the bucket limits allow,
+     * the magazine's contents are freed instead.
+     */
+    @Nonnull
+    Magazine swapFull(@Nonnull Magazine magazine, long size) {
+      if (!offer(magazine, size)) {
+        return magazine;
+      }
+      Magazine next = empty.poll();
+      return null != next && next.items.length == magazineSize ? next : new Magazine(magazineSize);
+    }
+
+    /**
+     * Adds a magazine to the depot, or frees its contents if the depot already holds as many items as the bucket limits
+     * allow.
+     *
+     * @return true if the depot took the magazine
+     */
+    boolean offer(@Nonnull Magazine magazine, long size) {
+      int maxMagazines = Math.min(Math.max(1, (int) (getMaxLengthPerBuffer() / size)), getMaxItemsPerBuffer()) / magazine.items.length;
+      if (full.size() < maxMagazines) {
+        magazine.stamp();
+        full.push(magazine);
+        return true;
+      }
+      rejections.increment();
+      freeMagazine(this, magazine, size);
+      return false;
+    }
+
+    void track(long length, int count) {
+      recycles.add(count);
+      this.count.add(count);
+      pooledLength.add(length * count);
+      pooledBytes.add(length * count * getBytesPerElement());
+      if (!registered.get()) register();
+      if (BUDGET != Long.MAX_VALUE) {
+        checkBudget();
+      }
+    }
+
+    void untrack(long length, int count) {
+      this.count.add(-count);
+      pooledLength.add(-length * count);
+      pooledBytes.add(-length * count * getBytesPerElement());
+    }
+
+    /**
+     * Age in seconds of the oldest item in the bucket's queue or depot, or zero if both are empty.
+     */
+    double oldestAge() {
+      ObjectWrapper item = items.peekFirst();
+      Magazine magazine = full.peekLast();
+      return Math.max(null == item ? 0 : item.age(), null == magazine ? 0 : magazine.age());
+    }
+
+    /**
+     * Frees the oldest pooled item, or the oldest full magazine in the depot if that is older.
+     *
+     * @return the total length released
+     */
+    long evictOldest(long size) {
+      ObjectWrapper item = items.peekFirst();
+      Magazine magazine = full.peekLast();
+      if (null != magazine && (null == item || magazine.age() >= item.age())) {
+        if (full.removeLastOccurrence(magazine)) {
+          long freed = freeMagazine(this, magazine, size);
+          empty.add(magazine);
+          return freed;
+        }
+        return 0;
+      }
+      if (null != item && items.removeFirstOccurrence(item)) {
+        untrack(size, 1);
+        evictions.increment();
+        return freeItem(item.obj.get(), size);
+      }
+      return 0;
+    }
+
+    /**
+     * Trades an empty magazine for a full one from the depot, or returns null if the depot has none.
+     */
+    @Nullable
+    Magazine swapEmpty(@Nonnull Magazine magazine) {
+      Magazine next = full.poll();
+      if (null != next) {
+        empty.push(magazine);
+      }
+      return next;
+    }
+  }
+
+  /**
+   * A small bounded stack of pooled items, owned by one thread at a time.
+   */
+  @RefIgnore
+  protected static final class Magazine {
+    final Object[] items;
+    int count;
+    long stampedAt;
+
+    Magazine(int capacity) {
+      this.items = new Object[capacity];
+    }
+
+    boolean isFull() {
+      return count == items.length;
+    }
+
+    void push(Object obj) {
+      items[count++] = obj;
+    }
+
+    Object pop() {
+      Object obj = items[--count];
+      items[count] = null;
+      return obj;
+    }
+
+    void stamp() {
+      stampedAt = System.nanoTime();
+    }
+
+    double age() {
+      return (System.nanoTime() - stampedAt) / 1e9;
+    }
+  }
+
+  /**
+   * The thread-local handle on a thread's {@link ThreadCache}. Only the thread's locals reference it, so it becomes
+   * unreachable when the thread terminates, which is how the expiry sweep finds caches to reap.
+   */
+  @RefIgnore
+  private final class CacheHandle {
+    final ThreadCache cache = new ThreadCache(this);
+  }
+
+  /**
+   * Per-thread magazines, keyed by bucket length in a small open-addressed table so lookups neither box nor allocate.
+   * Following the usual magazine layering, each length keeps a loaded and a previous magazine, so a thread alternating
+   * between obtain and recycle at a magazine boundary does not go to the depot every time.
+   * <p>
+   * The owning thread takes the cache's monitor for each operation so other threads can clear or flush it; the lock is
+   * uncontended except while that happens.
+   */
+  @RefIgnore
+  private class ThreadCache {
+    private static final int SLOTS = 32;
+    final WeakReference<CacheHandle> owner;
+    private final long[] keys = new long[SLOTS];
+    @SuppressWarnings("unchecked")
+    private final Bucket[] bins = (Bucket[]) new RecycleBin<?>.Bucket[SLOTS];
+    private final Magazine[] loaded = new Magazine[SLOTS];
+    private final Magazine[] previous = new Magazine[SLOTS];
+
+    ThreadCache(@Nonnull CacheHandle owner) {
+      this.owner = new WeakReference<>(owner);
+      Arrays.fill(keys, -1);
+      caches.add(this);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    synchronized T obtain(long key) {
+      int slot = slot(key);
+      if (slot < 0) return null;
+      Magazine magazine = loaded[slot];
+      if (magazine.count == 0) {
+        Magazine other = previous[slot];
+        if (other.count > 0) {
+          previous[slot] = magazine;
+          magazine = loaded[slot] = other;
+        } else {
+          Magazine next = bins[slot].swapEmpty(other);
+          if (null == next) return null;
+          previous[slot] = magazine;
+          magazine = loaded[slot] = next;
+        }
+      }
+      bins[slot].hits.increment();
+      bins[slot].untrack(key, 1);
+      return (T) magazine.pop();
+    }
+
+    synchronized boolean recycle(T data, long key) {
+      int slot = slot(key);
+      if (slot < 0) return false;
+      Magazine magazine = loaded[slot];
+      if (magazine.isFull()) {
+        Magazine other = previous[slot];
+        if (!other.isFull()) {
+          previous[slot] = magazine;
+          magazine = loaded[slot] = other;
+        } else {
+          previous[slot] = magazine;
+          magazine = loaded[slot] = bins[slot].swapFull(other, key);
+        }
+      }
+      magazine.push(data);
+      bins[slot].track(key, 1);
+      return true;
+    }
+
+    synchronized long clear() {
+      long freed = 0;
+      for (int i = 0; i < SLOTS; i++) {
+        if (keys[i] < 0) continue;
+        freed += freeMagazine(bins[i], loaded[i], keys[i]) + freeMagazine(bins[i], previous[i], keys[i]);
+        reset(i);
+      }
+      return freed;
+    }
+
+    /**
+     * Hands every non-empty magazine to its bucket's depot; the thread starts over with new magazines.
+     */
+    synchronized void release() {
+      for (int i = 0; i < SLOTS; i++) {
+        if (keys[i] < 0) continue;
+        if (loaded[i].count > 0) bins[i].offer(loaded[i], keys[i]);
+        if (previous[i].count > 0) bins[i].offer(previous[i], keys[i]);
+        reset(i);
+      }
+    }
+
+    private void reset(int slot) {
+      keys[slot] = -1;
+      bins[slot] = null;
+      loaded[slot] = null;
+      previous[slot] = null;
+    }
+
+    /**
+     * Returns the table slot for the key, claiming a free one if needed, or -1 if the table is full. Magazines built for
+     * a previous magazine size are emptied and replaced.
+     */
+    private int slot(long key) {
+      int start = (int) (key ^ (key >>> 32)) * 0x9E3779B9 >>> 27;
+      for (int i = 0; i < SLOTS; i++) {
+        int slot = (start + i) & (SLOTS - 1);
+        if (keys[slot] == key) {
+          if (loaded[slot].items.length != magazineSize) {
+            freeMagazine(bins[slot], loaded[slot], key);
+            freeMagazine(bins[slot], previous[slot], key);
+            loaded[slot] = new Magazine(magazineSize);
+            previous[slot] = new Magazine(magazineSize);
+          }
+          return slot;
+        }
+        if (keys[slot] < 0) {
+          keys[slot] = key;
+          bins[slot] = getBucket(key);
+          loaded[slot] = new Magazine(magazineSize);
+          previous[slot] = new Magazine(magazineSize);
+          return slot;
+        }
+      }
+      return -1;
+    }
+  }
+
+  @RefIgnore
+  private class MXBean implements RecycleBinMXBean {
+    @Nonnull
+    @Override
+    public RecycleBinStats getStats() {
+      return RecycleBin.this.getStats();
+    }
+
+    @Override
+    public long getPooledBytes() {
+      return getPooledLength() * getBytesPerElement();
+    }
+
+    @Override
+    public double getHitRate() {
+      return getStats().getHitRate();
+    }
+
+    @Override
+    public int getMaxItemsPerBuffer() {
+      return RecycleBin.this.getMaxItemsPerBuffer();
+    }
+
+    @Override
+    public void setMaxItemsPerBuffer(int maxItemsPerBuffer) {
+      RecycleBin.this.setMaxItemsPerBuffer(maxItemsPerBuffer);
+    }
+
+    @Override
+    public double getMaxLengthPerBuffer() {
+      return RecycleBin.this.getMaxLengthPerBuffer();
+    }
+
+    @Override
+    public void setMaxLengthPerBuffer(double maxLengthPerBuffer) {
+      RecycleBin.this.setMaxLengthPerBuffer(maxLengthPerBuffer);
+    }
+
+    @Override
+    public long evict(long bytes) {
+      return RecycleBin.this.evict(bytes);
+    }
+
+    @Override
+    public long clear() {
+      return RecycleBin.this.clear();
+    }
+  }
+
   @RefIgnore
   private class ObjectWrapper {
     public final Supplier<T> obj;
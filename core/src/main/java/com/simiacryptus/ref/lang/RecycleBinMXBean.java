@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+/**
+ * Management interface for a {@link RecycleBin}, registered with {@link RecycleBin#registerMBean(String)}.
+ */
+public interface RecycleBinMXBean {
+  RecycleBinStats getStats();
+
+  long getPooledBytes();
+
+  double getHitRate();
+
+  int getMaxItemsPerBuffer();
+
+  void setMaxItemsPerBuffer(int maxItemsPerBuffer);
+
+  double getMaxLengthPerBuffer();
+
+  void setMaxLengthPerBuffer(double maxLengthPerBuffer);
+
+  long evict(long bytes);
+
+  long clear();
+}
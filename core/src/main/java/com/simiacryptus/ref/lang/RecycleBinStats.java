@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of a {@link RecycleBin}'s counters, as returned by {@link RecycleBin#getStats()}.
+ */
+@RefIgnore
+public final class RecycleBinStats {
+  @Nonnull
+  private final List<BucketStats> buckets;
+  private final long rejections;
+  private final long allocations;
+  private final long allocationFailures;
+  private final long allocationNanos;
+  private final long maxAllocationNanos;
+
+  public RecycleBinStats(@Nonnull List<BucketStats> buckets, long rejections, long allocations,
+                         long allocationFailures, long allocationNanos, long maxAllocationNanos) {
+    this.buckets = Collections.unmodifiableList(buckets);
+    this.rejections = rejections;
+    this.allocations = allocations;
+    this.allocationFailures = allocationFailures;
+    this.allocationNanos = allocationNanos;
+    this.maxAllocationNanos = maxAllocationNanos;
+  }
+
+  /**
+   * Per-bucket counters, ordered by bucket length.
+   */
+  @Nonnull
+  public List<BucketStats> getBuckets() {
+    return buckets;
+  }
+
+  public long getHits() {
+    return buckets.stream().mapToLong(BucketStats::getHits).sum();
+  }
+
+  public long getMisses() {
+    return buckets.stream().mapToLong(BucketStats::getMisses).sum();
+  }
+
+  public double getHitRate() {
+    long hits = getHits();
+    long total = hits + getMisses();
+    return 0 == total ? 0 : (double) hits / total;
+  }
+
+  public long getRecycles() {
+    return buckets.stream().mapToLong(BucketStats::getRecycles).sum();
+  }
+
+  public long getEvictions() {
+    return buckets.stream().mapToLong(BucketStats::getEvictions).sum();
+  }
+
+  /**
+   * Items offered to {@link RecycleBin#recycle} that were freed instead of pooled, because they were out of the
+   * configured length range or their bucket was full.
+   */
+  public long getRejections() {
+    return rejections;
+  }
+
+  public long getPooledItems() {
+    return buckets.stream().mapToLong(BucketStats::getPooledItems).sum();
+  }
+
+  public long getPooledBytes() {
+    return buckets.stream().mapToLong(BucketStats::getPooledBytes).sum();
+  }
+
+  public long getAllocations() {
+    return allocations;
+  }
+
+  public long getAllocationFailures() {
+    return allocationFailures;
+  }
+
+  public double getMeanAllocationMillis() {
+    return 0 == allocations ? 0 : allocationNanos / 1e6 / allocations;
+  }
+
+  public double getMaxAllocationMillis() {
+    return maxAllocationNanos / 1e6;
+  }
+
+  @Nonnull
+  @Override
+  public String toString() {
+    return String.format("hits=%d, misses=%d, recycles=%d, evictions=%d, rejections=%d, pooled=%d bytes, " +
+            "allocations=%d (%d failed, %.3f ms mean, %.3f ms max)", getHits(), getMisses(), getRecycles(),
+        getEvictions(), rejections, getPooledBytes(), allocations, allocationFailures, getMeanAllocationMillis(),
+        getMaxAllocationMillis());
+  }
+
+  /**
+   * Counters for one size class.
+   */
+  @RefIgnore
+  public static final class BucketStats {
+    private final long length;
+    private final long hits;
+    private final long misses;
+    private final long recycles;
+    private final long evictions;
+    private final long pooledItems;
+    private final long pooledBytes;
+
+    public BucketStats(long length, long hits, long misses, long recycles, long evictions, long pooledItems,
+                       long pooledBytes) {
+      this.length = length;
+      this.hits = hits;
+      this.misses = misses;
+      this.recycles = recycles;
+      this.evictions = evictions;
+      this.pooledItems = pooledItems;
+      this.pooledBytes = pooledBytes;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getRecycles() {
+      return recycles;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public long getPooledItems() {
+      return pooledItems;
+    }
+
+    public long getPooledBytes() {
+      return pooledBytes;
+    }
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import com.simiacryptus.ref.wrappers.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.*;
+
+/**
+ * Direct-call wrappers used by {@link RefUtil#wrapInterface(Object, Object...)} for closures whose class
+ * implements exactly one of the common functional interfaces. Each wrapper is its own reference counter
+ * and forwards the functional method with a plain interface call, where the {@link java.lang.reflect.Proxy}
+ * fallback goes through {@link java.lang.reflect.Method#invoke} on every call. Closures that override a
+ * default method of their interface (e.g. {@link Comparator#reversed()}) keep the proxy, which forwards
+ * every interface method to the closure; the wrappers only forward the functional method and
+ * {@code equals}/{@code hashCode}/{@code toString}.
+ */
+@RefIgnore
+final class RefClosures {
+  private static final Map<Class<?>, BiFunction<Object, Object[], Object>> factories = new HashMap<>();
+  private static final ClassValue<BiFunction<Object, Object[], Object>> byClass = new ClassValue<BiFunction<Object, Object[], Object>>() {
+    @Nullable
+    @Override
+    protected BiFunction<Object, Object[], Object> computeValue(@Nonnull Class<?> type) {
+      final Class<?>[] interfaces = type.getInterfaces();
+      if (interfaces.length != 1 || overridesDefaults(type, interfaces[0])) return null;
+      return factories.get(interfaces[0]);
+    }
+  };
+
+  static {
+    factories.put(Runnable.class, (obj, refs) -> new WrappedRunnable((Runnable) obj, refs));
+    factories.put(Supplier.class, (obj, refs) -> new WrappedSupplier<>((Supplier<?>) obj, refs));
+    factories.put(Consumer.class, (obj, refs) -> new WrappedConsumer<>((Consumer<?>) obj, refs));
+    factories.put(BiConsumer.class, (obj, refs) -> new WrappedBiConsumer<>((BiConsumer<?, ?>) obj, refs));
+    factories.put(Function.class, (obj, refs) -> new WrappedFunction<>((Function<?, ?>) obj, refs));
+    factories.put(UnaryOperator.class, (obj, refs) -> new WrappedUnaryOperator<>((UnaryOperator<?>) obj, refs));
+    factories.put(BiFunction.class, (obj, refs) -> new WrappedBiFunction<>((BiFunction<?, ?, ?>) obj, refs));
+    factories.put(BinaryOperator.class, (obj, refs) -> new WrappedBinaryOperator<>((BinaryOperator<?>) obj, refs));
+    factories.put(Predicate.class, (obj, refs) -> new WrappedPredicate<>((Predicate<?>) obj, refs));
+    factories.put(BiPredicate.class, (obj, refs) -> new WrappedBiPredicate<>((BiPredicate<?, ?>) obj, refs));
+    factories.put(Comparator.class, (obj, refs) -> new WrappedComparator<>((Comparator<?>) obj, refs));
+    factories.put(IntFunction.class, (obj, refs) -> new WrappedIntFunction<>((IntFunction<?>) obj, refs));
+    factories.put(ToIntFunction.class, (obj, refs) -> new WrappedToIntFunction<>((ToIntFunction<?>) obj, refs));
+    factories.put(ToLongFunction.class, (obj, refs) -> new WrappedToLongFunction<>((ToLongFunction<?>) obj, refs));
+    factories.put(ToDoubleFunction.class, (obj, refs) -> new WrappedToDoubleFunction<>((ToDoubleFunction<?>) obj, refs));
+    factories.put(RefSupplier.class, (obj, refs) -> new WrappedRefSupplier<>((RefSupplier<?>) obj, refs));
+    factories.put(RefConsumer.class, (obj, refs) -> new WrappedRefConsumer<>((RefConsumer<?>) obj, refs));
+    factories.put(RefFunction.class, (obj, refs) -> new WrappedRefFunction<>((RefFunction<?, ?>) obj, refs));
+    factories.put(RefBiFunction.class, (obj, refs) -> new WrappedRefBiFunction<>((RefBiFunction<?, ?, ?>) obj, refs));
+    factories.put(RefPredicate.class, (obj, refs) -> new WrappedRefPredicate<>((RefPredicate<?>) obj, refs));
+  }
+
+  private RefClosures() {
+  }
+
+  @Nullable
+  static Object wrap(@Nonnull @RefAware Object obj,
+                     @Nonnull @RefAware Object[] refs) {
+    final BiFunction<Object, Object[], Object> factory = byClass.get(obj.getClass());
+    return null == factory ? null : factory.apply(obj, refs);
+  }
+
+  private static boolean overridesDefaults(@Nonnull Class<?> type, @Nonnull Class<?> iface) {
+    for (Method method : iface.getMethods()) {
+      if (!method.isDefault()) continue;
+      try {
+        if (!type.getMethod(method.getName(), method.getParameterTypes()).getDeclaringClass().isInterface()) {
+          return true;
+        }
+      } catch (NoSuchMethodException e) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private abstract static class Wrapped<T> extends ReferenceCountingBase {
+    protected final T obj;
+    private final Object[] refs;
+
+    protected Wrapped(T obj, Object[] refs) {
+      this.obj = obj;
+      this.refs = refs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return obj.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+      return obj.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return obj.toString();
+    }
+
+    @Override
+    protected void _free() {
+      RefUtil.freeRef(refs);
+      if (obj instanceof ReferenceCounting)
+        ((ReferenceCounting) obj).freeRef();
+      super._free();
+    }
+  }
+
+  private static final class WrappedRunnable extends Wrapped<Runnable> implements Runnable {
+    WrappedRunnable(Runnable obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public void run() {
+      obj.run();
+    }
+  }
+
+  private static final class WrappedSupplier<T> extends Wrapped<Supplier<T>> implements Supplier<T> {
+    WrappedSupplier(Supplier<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public T get() {
+      return obj.get();
+    }
+  }
+
+  private static final class WrappedConsumer<T> extends Wrapped<Consumer<T>> implements Consumer<T> {
+    WrappedConsumer(Consumer<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public void accept(@RefAware T t) {
+      obj.accept(t);
+    }
+  }
+
+  private static final class WrappedBiConsumer<T, U> extends Wrapped<BiConsumer<T, U>> implements BiConsumer<T, U> {
+    WrappedBiConsumer(BiConsumer<T, U> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public void accept(@RefAware T t, @RefAware U u) {
+      obj.accept(t, u);
+    }
+  }
+
+  private static final class WrappedFunction<T, R> extends Wrapped<Function<T, R>> implements Function<T, R> {
+    WrappedFunction(Function<T, R> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public R apply(@RefAware T t) {
+      return obj.apply(t);
+    }
+  }
+
+  private static final class WrappedUnaryOperator<T> extends Wrapped<UnaryOperator<T>> implements UnaryOperator<T> {
+    WrappedUnaryOperator(UnaryOperator<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public T apply(@RefAware T t) {
+      return obj.apply(t);
+    }
+  }
+
+  private static final class WrappedBiFunction<T, U, R> extends Wrapped<BiFunction<T, U, R>> implements BiFunction<T, U, R> {
+    WrappedBiFunction(BiFunction<T, U, R> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public R apply(@RefAware T t, @RefAware U u) {
+      return obj.apply(t, u);
+    }
+  }
+
+  private static final class WrappedBinaryOperator<T> extends Wrapped<BinaryOperator<T>> implements BinaryOperator<T> {
+    WrappedBinaryOperator(BinaryOperator<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public T apply(@RefAware T t, @RefAware T u) {
+      return obj.apply(t, u);
+    }
+  }
+
+  private static final class WrappedPredicate<T> extends Wrapped<Predicate<T>> implements Predicate<T> {
+    WrappedPredicate(Predicate<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public boolean test(@RefAware T t) {
+      return obj.test(t);
+    }
+  }
+
+  private static final class WrappedBiPredicate<T, U> extends Wrapped<BiPredicate<T, U>> implements BiPredicate<T, U> {
+    WrappedBiPredicate(BiPredicate<T, U> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public boolean test(@RefAware T t, @RefAware U u) {
+      return obj.test(t, u);
+    }
+  }
+
+  private static final class WrappedComparator<T> extends Wrapped<Comparator<T>> implements Comparator<T> {
+    WrappedComparator(Comparator<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public int compare(@RefAware T a, @RefAware T b) {
+      return obj.compare(a, b);
+    }
+  }
+
+  private static final class WrappedIntFunction<R> extends Wrapped<IntFunction<R>> implements IntFunction<R> {
+    WrappedIntFunction(IntFunction<R> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public R apply(int value) {
+      return obj.apply(value);
+    }
+  }
+
+  private static final class WrappedToIntFunction<T> extends Wrapped<ToIntFunction<T>> implements ToIntFunction<T> {
+    WrappedToIntFunction(ToIntFunction<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public int applyAsInt(@RefAware T t) {
+      return obj.applyAsInt(t);
+    }
+  }
+
+  private static final class WrappedToLongFunction<T> extends Wrapped<ToLongFunction<T>> implements ToLongFunction<T> {
+    WrappedToLongFunction(ToLongFunction<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public long applyAsLong(@RefAware T t) {
+      return obj.applyAsLong(t);
+    }
+  }
+
+  private static final class WrappedToDoubleFunction<T> extends Wrapped<ToDoubleFunction<T>> implements ToDoubleFunction<T> {
+    WrappedToDoubleFunction(ToDoubleFunction<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public double applyAsDouble(@RefAware T t) {
+      return obj.applyAsDouble(t);
+    }
+  }
+
+  private static final class WrappedRefSupplier<T> extends Wrapped<RefSupplier<T>> implements RefSupplier<T> {
+    WrappedRefSupplier(RefSupplier<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public T get() {
+      return obj.get();
+    }
+  }
+
+  private static final class WrappedRefConsumer<T> extends Wrapped<RefConsumer<T>> implements RefConsumer<T> {
+    WrappedRefConsumer(RefConsumer<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public void accept(@RefAware T t) {
+      obj.accept(t);
+    }
+  }
+
+  private static final class WrappedRefFunction<T, R> extends Wrapped<RefFunction<T, R>> implements RefFunction<T, R> {
+    WrappedRefFunction(RefFunction<T, R> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Nonnull
+    @Override
+    public R apply(@RefAware T t) {
+      return obj.apply(t);
+    }
+  }
+
+  private static final class WrappedRefBiFunction<T, U, R> extends Wrapped<RefBiFunction<T, U, R>> implements RefBiFunction<T, U, R> {
+    WrappedRefBiFunction(RefBiFunction<T, U, R> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public R apply(@RefAware T t, @RefAware U u) {
+      return obj.apply(t, u);
+    }
+  }
+
+  private static final class WrappedRefPredicate<T> extends Wrapped<RefPredicate<T>> implements RefPredicate<T> {
+    WrappedRefPredicate(RefPredicate<T> obj, Object[] refs) {
+      super(obj, refs);
+    }
+
+    @Override
+    public boolean test(@RefAware T t) {
+      return obj.test(t);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.simiacryptus.lang.DoubleStatistics;
+import com.simiacryptus.ref.RefSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded executor for {@link AsyncFree} objects. When the queue is full the releasing thread runs the free itself,
+ * which applies backpressure to producers instead of growing the backlog without bound.
+ */
+@RefIgnore
+public final class RefFreeExecutor {
+  private static final Logger logger = LoggerFactory.getLogger(RefFreeExecutor.class);
+  private static final LongAdder submitted = new LongAdder();
+  private static final LongAdder completed = new LongAdder();
+  private static final LongAdder callerRuns = new LongAdder();
+  private static final LongAdder failures = new LongAdder();
+  private static final AtomicLong pending = new AtomicLong();
+  private static final DoubleStatistics latency = new DoubleStatistics();
+  private static final Object drainLock = new Object();
+  private static final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+      RefSettings.INSTANCE().asyncFreeThreads, RefSettings.INSTANCE().asyncFreeThreads,
+      0L, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(RefSettings.INSTANCE().asyncFreeQueueSize),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ref-free-%d").build(),
+      (task, executor) -> {
+        callerRuns.increment();
+        task.run();
+      });
+
+  private RefFreeExecutor() {
+  }
+
+  public static long getSubmitted() {
+    return submitted.sum();
+  }
+
+  public static long getCompleted() {
+    return completed.sum();
+  }
+
+  public static long getCallerRuns() {
+    return callerRuns.sum();
+  }
+
+  public static long getFailures() {
+    return failures.sum();
+  }
+
+  public static long getPending() {
+    return pending.get();
+  }
+
+  public static int getQueueDepth() {
+    return pool.getQueue().size();
+  }
+
+  /**
+   * Statistics of the time, in milliseconds, between submitting a free and its completion.
+   */
+  @Nonnull
+  public static DoubleStatistics getLatency() {
+    synchronized (latency) {
+      return new DoubleStatistics().combine(latency);
+    }
+  }
+
+  /**
+   * Blocks until every free submitted so far has completed.
+   */
+  public static void flush() {
+    synchronized (drainLock) {
+      while (pending.get() > 0) {
+        try {
+          drainLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  static void submit(@Nonnull Runnable free) {
+    submitted.increment();
+    pending.incrementAndGet();
+    long submittedAt = System.nanoTime();
+    pool.execute(() -> {
+      try {
+        free.run();
+      } catch (Throwable e) {
+        failures.increment();
+        logger.warn("Error in asynchronous free", e);
+      } finally {
+        latency.accept((System.nanoTime() - submittedAt) / 1e6);
+        completed.increment();
+        if (pending.decrementAndGet() == 0) {
+          synchronized (drainLock) {
+            drainLock.notifyAll();
+          }
+        }
+      }
+    });
+  }
+}
@@ -19,9 +19,10 @@
 
 package com.simiacryptus.ref.lang;
 
+import com.simiacryptus.ref.RefSettings;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
@@ -36,30 +37,31 @@ import java.util.stream.Stream;
 @SuppressWarnings("unused")
 public class RefUtil {
 
+  private static final int PARALLEL_ARRAY_THRESHOLD = RefSettings.INSTANCE().parallelArrayThreshold;
+
+  /**
+   * Per-class reference handling, resolved once per class so the generic helpers cost a single virtual call.
+   */
+  private static final ClassValue<RefDispatch> dispatch = new ClassValue<RefDispatch>() {
+    @Override
+    protected RefDispatch computeValue(Class<?> c) {
+      if (ReferenceCounting.class.isAssignableFrom(c)) {
+        return RefDispatch.REFERENCE_COUNTING;
+      } else if (c.isArray()) {
+        return c.getComponentType().isPrimitive() ? RefDispatch.NONE : RefDispatch.ARRAY;
+      } else if (Map.Entry.class.isAssignableFrom(c)) {
+        return RefDispatch.ENTRY;
+      } else if (Optional.class.isAssignableFrom(c)) {
+        return RefDispatch.OPTIONAL;
+      } else {
+        return RefDispatch.NONE;
+      }
+    }
+  };
+
   public static <T> void freeRef(@Nullable @RefAware T value) {
     if (null != value) {
-      Class<?> valueClass = value.getClass();
-      if (!RefUtil.isFreeRefAware(valueClass)) {
-        return;
-      }
-      if (value instanceof ReferenceCounting) {
-        ((ReferenceCounting) value).freeRef();
-      } else if (valueClass.isArray()) {
-        synchronized (value) {
-          int length = Array.getLength(value);
-          for (int i = 0; i < length; i++) {
-            Object arrayElement = Array.get(value, i);
-            freeRef(arrayElement);
-          }
-        }
-      } else if (value instanceof Map.Entry) {
-        freeRef(((Map.Entry) value).getKey());
-        freeRef(((Map.Entry) value).getValue());
-      } else if (value instanceof Optional) {
-        final Optional optional = (Optional) value;
-        if (optional.isPresent())
-          freeRef(get(optional));
-      }
+      dispatch.get(value.getClass()).freeRef(value);
     }
   }
 
@@ -67,19 +69,7 @@ public class RefUtil {
   @RefAware
   public static <T> T addRef(@Nullable @RefIgnore T value) {
     if (null != value) {
-      Class<?> valueClass = value.getClass();
-      if (!RefUtil.isRefAware(valueClass)) {
-        return value;
-      }
-      if (value instanceof ReferenceCounting) ((ReferenceCounting) value).addRef();
-      else if (valueClass.isArray()) {
-        synchronized (value) {
-          int length = Array.getLength(value);
-          for (int i = 0; i < length; i++) {
-            addRef(Array.get(value, i));
-          }
-        }
-      }
+      dispatch.get(value.getClass()).addRef(value);
     }
     return value;
   }
@@ -100,6 +90,8 @@ public class RefUtil {
   public static @RefAware
   <T> T wrapInterface(@Nonnull @RefAware T obj,
                       @Nonnull @RefAware Object... refs) {
+    final Object wrapped = RefClosures.wrap(obj, refs);
+    if (null != wrapped) return (T) wrapped;
     return (T) Proxy.newProxyInstance(
         ReferenceCounting.class.getClassLoader(),
         Stream.concat(
@@ -161,12 +153,9 @@ public class RefUtil {
 
   public static boolean assertAlive(@RefAware @RefIgnore @Nonnull Object obj) {
     if (obj instanceof ReferenceCounting) ((ReferenceCounting) obj).assertAlive();
-    else if (obj.getClass().isArray()) {
-      synchronized (obj) {
-        int length = Array.getLength(obj);
-        for (int i = 0; i < length; i++) {
-          assertAlive(Array.get(obj, i));
-        }
+    else if (obj instanceof Object[]) {
+      for (Object item : (Object[]) obj) {
+        if (null != item) assertAlive(item);
       }
     }
     return true;
@@ -174,12 +163,9 @@ public class RefUtil {
 
   public static boolean watch(@RefAware @RefIgnore @Nonnull Object obj) {
     if (obj instanceof ReferenceCounting) ((ReferenceCountingBase) obj).watch();
-    else if (obj.getClass().isArray()) {
-      synchronized (obj) {
-        int length = Array.getLength(obj);
-        for (int i = 0; i < length; i++) {
-          watch(Array.get(obj, i));
-        }
+    else if (obj instanceof Object[]) {
+      for (Object item : (Object[]) obj) {
+        if (null != item) watch(item);
       }
     }
     return true;
@@ -219,6 +205,81 @@ public class RefUtil {
     return notNull;
   }
 
+  private enum RefDispatch {
+    NONE {
+      @Override
+      void addRef(@Nonnull Object value) {
+      }
+
+      @Override
+      void freeRef(@Nonnull Object value) {
+      }
+    },
+    REFERENCE_COUNTING {
+      @Override
+      void addRef(@Nonnull Object value) {
+        ((ReferenceCounting) value).addRef();
+      }
+
+      @Override
+      void freeRef(@Nonnull Object value) {
+        ((ReferenceCounting) value).freeRef();
+      }
+    },
+    ARRAY {
+      @Override
+      void addRef(@Nonnull Object value) {
+        final Object[] array = (Object[]) value;
+        if (array.length >= PARALLEL_ARRAY_THRESHOLD) {
+          Arrays.stream(array).parallel().forEach(RefUtil::addRef);
+        } else {
+          for (Object item : array) {
+            RefUtil.addRef(item);
+          }
+        }
+      }
+
+      @Override
+      void freeRef(@Nonnull Object value) {
+        final Object[] array = (Object[]) value;
+        if (array.length >= PARALLEL_ARRAY_THRESHOLD) {
+          Arrays.stream(array).parallel().forEach(RefUtil::freeRef);
+        } else {
+          for (Object item : array) {
+            RefUtil.freeRef(item);
+          }
+        }
+      }
+    },
+    ENTRY {
+      @Override
+      void addRef(@Nonnull Object value) {
+      }
+
+      @Override
+      void freeRef(@Nonnull Object value) {
+        RefUtil.freeRef(((Map.Entry) value).getKey());
+        RefUtil.freeRef(((Map.Entry) value).getValue());
+      }
+    },
+    OPTIONAL {
+      @Override
+      void addRef(@Nonnull Object value) {
+      }
+
+      @Override
+      void freeRef(@Nonnull Object value) {
+        final Optional optional = (Optional) value;
+        if (optional.isPresent())
+          RefUtil.freeRef(get(optional));
+      }
+    };
+
+    abstract void addRef(@Nonnull Object value);
+
+    abstract void freeRef(@Nonnull Object value);
+  }
+
   private static class RefWrapperHandler<T> implements InvocationHandler {
     private final ReferenceCountingBase refcounter;
     private final T obj;
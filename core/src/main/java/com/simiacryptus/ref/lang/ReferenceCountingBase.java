@@ -29,15 +29,19 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Cleaner;
+import java.lang.StackWalker.StackFrame;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static java.util.concurrent.Executors.newFixedThreadPool;
-
 @RefIgnore
 @SuppressWarnings("unused")
 public abstract class ReferenceCountingBase implements ReferenceCounting {
@@ -45,8 +49,6 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
   private static final Logger logger = LoggerFactory.getLogger(ReferenceCountingBase.class);
   private static final long LOAD_TIME = System.nanoTime();
   private static final UUID jvmId = UUID.randomUUID();
-  private static final ExecutorService gcPool = newFixedThreadPool(1,
-      new ThreadFactoryBuilder().setDaemon(true).build());
   private static final ThreadLocal<Boolean> inFinalizer = new ThreadLocal<Boolean>() {
     @Nonnull
     @Override
@@ -54,64 +56,127 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
       return false;
     }
   };
+  private static final StackWalker stackWalker = StackWalker.getInstance();
+  private static final Set<String> traceSkippedMethods = new HashSet<>(Arrays.asList(
+      "addRef", "referenceReport", "traceAddRef", "traceFreeRef", "freeRefSlow"));
   public static boolean supressLog = false;
+  /**
+   * The reference count and lifecycle flags are packed into a single word: the low 32 bits hold the (signed)
+   * reference count and the high bits hold the FREED, DETACHED and FINALIZED flags, plus the MERGED and QUEUED flags
+   * used by {@link BiasedRefCount} objects.
+   */
+  private static final VarHandle STATE;
+  private static final long COUNT_MASK = 0xFFFFFFFFL;
+  private static final long FREED = 1L << 32;
+  private static final long DETACHED = 1L << 33;
+  private static final long FINALIZED = 1L << 34;
+  private static final long MERGED = 1L << 35;
+  private static final long QUEUED = 1L << 36;
+  /**
+   * When watching is disabled no object can carry addRef/freeRef traces, so the trace bookkeeping is compiled out
+   * of the addRef/freeRef fast paths.
+   */
+  private static final boolean WATCH_ENABLED = RefSettings.INSTANCE().watchEnable;
+  private static final boolean ITERATIVE_FREE = RefSettings.INSTANCE().iterativeFree;
+  /**
+   * In Cleaner mode instances carry no finalizer guardian, so they are not finalizable; leaks are handled by a
+   * {@link Reclaimer} registered with {@link #cleaner} instead.
+   */
+  private static final boolean CLEANER_ENABLED = RefSettings.INSTANCE().cleanerEnable;
+  @Nullable
+  private static final Cleaner cleaner = CLEANER_ENABLED ? Cleaner.create(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ref-cleaner-%d").build()) : null;
+  private static final ClassValue<Boolean> biasedClasses = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return type.isAnnotationPresent(BiasedRefCount.class);
+    }
+  };
+  private static final ClassValue<Boolean> asyncFreeClasses = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return type.isAnnotationPresent(AsyncFree.class);
+    }
+  };
+  private static final ThreadLocal<BiasOwner> biasOwner = ThreadLocal.withInitial(BiasOwner::new);
+  private static final ThreadLocal<FreeQueue> freeQueue = ThreadLocal.withInitial(FreeQueue::new);
 
   static {
     if (RefSettings.INSTANCE() == null)
       throw new RuntimeException();
+    try {
+      STATE = MethodHandles.lookup().findVarHandle(ReferenceCountingBase.class, "state", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
   }
 
-  private transient final AtomicInteger references = new AtomicInteger(1);
-  private transient final AtomicBoolean isFreed = new AtomicBoolean(false);
+  private transient volatile long state = 1;
+  @Nullable
+  private transient volatile Traces traces = null;
+  /**
+   * For {@link BiasedRefCount} objects, the creating thread and its pending-merge queue. Until the object is MERGED,
+   * references taken and released by the owner are counted in the plain {@link #biasedRefs} field and the shared
+   * count in {@link #state} only tracks the other threads' net contribution.
+   */
   @Nullable
-  private transient final StackTraceElement[] refCreatedBy;
-  private transient LinkedList<StackTraceElement[]> addRef = null;
-  private transient LinkedList<StackTraceElement[]> freeRefs = null;
-  private transient volatile boolean isFinalized = false;
-  private transient boolean detached = false;
+  private transient final BiasOwner bias;
+  private transient int biasedRefs = 0;
+  /**
+   * In the default mode, the only finalizable part of this object: its finalizer runs {@link #reclaim()} once both
+   * become unreachable. Null in Cleaner mode.
+   */
+  @Nullable
+  private transient final Object guardian;
+  /**
+   * In Cleaner mode, the state a leak needs once this object is gone, registered with {@link #cleaner}. It is created
+   * only when there is something to do for a leak: a report to log or a reclaim action to run.
+   */
+  @Nullable
+  private transient volatile Reclaimer reclaimer;
 
   protected ReferenceCountingBase() {
-    if (RefSettings.INSTANCE().isLifecycleDebug(getClass())) {
-      refCreatedBy = getStackTrace();
+    if (biasedClasses.get(getClass())) {
+      bias = biasOwner.get();
+      biasedRefs = 1;
+      state = 0;
+    } else {
+      bias = null;
+    }
+    RefSettings settings = RefSettings.INSTANCE();
+    if (settings.isLifecycleDebug(getClass()) || settings.isLifecycleSampled(getClass())) {
+      traces = new Traces(getStackTrace());
       watch();
-    } else if (RefSettings.INSTANCE().watchCreation) {
-      refCreatedBy = getStackTrace();
+    } else if (settings.watchCreation) {
+      traces = new Traces(getStackTrace());
+    }
+    if (CLEANER_ENABLED) {
+      guardian = null;
+      if (logger.isDebugEnabled()) reclaimer();
     } else {
-      refCreatedBy = null;
+      guardian = new FinalizerGuardian();
     }
   }
 
+  /**
+   * Captures the caller's frames as StackWalker handles; they are only formatted into strings when a report is
+   * requested.
+   */
   @NotNull
-  private StackTraceElement[] getStackTrace() {
-    StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-    //stackTrace = Arrays.stream(stackTrace).filter(RefSettings::filter).toArray(StackTraceElement[]::new);
-    int i = 0;
-    while (i < stackTrace.length) {
-      StackTraceElement stackTraceElement = stackTrace[i++];
-      String methodName = stackTraceElement.getMethodName();
-      if (methodName.equals("getStackTrace")) {
-        break;
-      }
-    }
-    while (i < stackTrace.length) {
-      StackTraceElement stackTraceElement = stackTrace[i];
-      String methodName = stackTraceElement.getMethodName();
-      if (Arrays.asList("addRef", "referenceReport").contains(methodName)) {
-        i++;
-      } else {
-        break;
-      }
-    }
-    stackTrace = Arrays.copyOfRange(stackTrace, i, Math.min(stackTrace.length, i + RefSettings.maxStackSize));
-    return stackTrace;
+  private static StackFrame[] getStackTrace() {
+    return stackWalker.walk(frames -> frames
+        .skip(1)
+        .dropWhile(frame -> traceSkippedMethods.contains(frame.getMethodName()))
+        .limit(RefSettings.maxStackSize)
+        .toArray(StackFrame[]::new));
   }
 
   public boolean isDetached() {
-    return detached;
+    return 0 != (state & DETACHED);
   }
 
   public final boolean isFreed() {
-    return isFreed.get();
+    return 0 != (state & FREED);
   }
 
   public static CharSequence referenceReport(@Nonnull ReferenceCountingBase obj, boolean includeCaller) {
@@ -153,30 +218,53 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
   }
 
   @Nonnull
-  private static String getString(@Nullable @RefAware StackTraceElement[] trace) {
+  private static String getString(@Nullable @RefAware StackFrame[] trace) {
     return null == trace ? ""
-        : Arrays.stream(trace).parallel().map(x -> "at " + x).reduce((a, b) -> a + "\n" + b).orElse("");
+        : Arrays.stream(trace).map(x -> "at " + x.toStackTraceElement()).collect(Collectors.joining("\n"));
+  }
+
+  private static int count(long state) {
+    return (int) state;
+  }
+
+  private static long withCount(long state, int count) {
+    return (state & ~COUNT_MASK) | (count & COUNT_MASK);
   }
 
   public synchronized void watch() {
     if (RefSettings.INSTANCE().watchEnable) {
-      if (addRef == null) addRef = new LinkedList<>();
-      if (freeRefs == null) freeRefs = new LinkedList<>();
+      Traces traces = this.traces;
+      if (traces == null) {
+        this.traces = traces = new Traces(null);
+        Reclaimer reclaimer = this.reclaimer;
+        if (null != reclaimer) reclaimer.traces = traces;
+      }
+      if (traces.addRef == null) traces.addRef = new TraceBuffer(RefSettings.maxTracesPerObject);
+      if (traces.freeRefs == null) traces.freeRefs = new TraceBuffer(RefSettings.maxTracesPerObject);
     }
   }
 
+  /**
+   * Merges the thread-local reference counts of any {@link BiasedRefCount} objects owned by the current thread that
+   * other threads have released past their shared count, freeing those that have no references left.
+   */
+  public static void flushBiasedRefs() {
+    biasOwner.get().drain();
+  }
+
   @Override
   public ReferenceCounting addRef() {
-    if (references.updateAndGet(i -> i > 0 ? i + 1 : 0) == 0)
-      throw new IllegalStateException(referenceReport(true, isFreed(), true));
-    if (null != addRef && addRef.size() < RefSettings.maxTracesPerObject) {
-      StackTraceElement[] stackTrace = getStackTrace();
-      if (null != stackTrace) {
-        synchronized (addRef) {
-          addRef.add(stackTrace);
-        }
-      }
+    if (null != bias && isBiasedToCurrentThread()) {
+      biasedRefs++;
+      if (WATCH_ENABLED) traceAddRef();
+      return this;
     }
+    long prev = state;
+    if (count(prev) <= 0 || !STATE.compareAndSet(this, prev, prev + 1)) {
+      if (!incrementRefs())
+        throw new IllegalStateException(referenceReport(true, isFreed(), true));
+    }
+    if (WATCH_ENABLED) traceAddRef();
     return this;
   }
 
@@ -211,24 +299,50 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
 
   @Override
   public int currentRefCount() {
-    return references.get();
+    long state = this.state;
+    return null != bias && 0 == (state & MERGED) ? count(state) + biasedRefs : count(state);
   }
 
   @Nonnull
   public ReferenceCountingBase detach() {
-    this.detached = true;
+    STATE.getAndBitwiseOr(this, DETACHED);
+    Reclaimer reclaimer = this.reclaimer;
+    if (null != reclaimer) reclaimer.detached = true;
     return this;
   }
 
   @Override
   public int freeRef() {
-    if (isFreed()) {
-      //logger.debug("Object has been finalized");
-      return 0;
+    if (null != bias && isBiasedToCurrentThread()) {
+      return freeBiasedRef();
+    }
+    long prev = state;
+    if (count(prev) > 1 && 0 == (prev & FREED) && STATE.compareAndSet(this, prev, prev - 1)) {
+      if (WATCH_ENABLED) traceFreeRef(null);
+      return count(prev) - 1;
     }
-    int refs = references.decrementAndGet();
-    StackTraceElement[] stackTrace = null;
-    if (refs < 0 && !detached) {
+    return freeRefSlow();
+  }
+
+  private int freeRefSlow() {
+    long prev;
+    long next;
+    do {
+      prev = state;
+      if (0 != (prev & FREED)) {
+        //logger.debug("Object has been finalized");
+        return 0;
+      }
+      next = withCount(prev, count(prev) - 1);
+      if (null != bias && 0 == (prev & MERGED)) {
+        if (count(next) < 0) next |= QUEUED;
+      } else if (count(next) == 0 && 0 == (next & DETACHED)) next |= FREED;
+    } while (!STATE.compareAndSet(this, prev, next));
+    if (0 == (prev & QUEUED) && 0 != (next & QUEUED)) bias.enqueue(this);
+    int refs = count(next);
+    boolean detached = 0 != (next & DETACHED);
+    StackFrame[] stackTrace = null;
+    if (refs < 0 && !detached && 0 == (next & QUEUED)) {
       stackTrace = getStackTrace();
       boolean isInFinalizer = Arrays.stream(stackTrace)
           .filter(x -> x.getClassName().equals("java.lang.ref.Finalizer")).findAny().isPresent();
@@ -241,32 +355,82 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
       }
     }
 
-    if (null != freeRefs && freeRefs.size() < RefSettings.maxTracesPerObject) {
-      if (null == stackTrace) stackTrace = getStackTrace();
-      if (null != stackTrace) {
-        synchronized (freeRefs) {
-          freeRefs.add(stackTrace);
-        }
-      }
+    if (WATCH_ENABLED) traceFreeRef(stackTrace);
+    if (0 == (prev & FREED) && 0 != (next & FREED)) {
+      doFree();
     }
-    if (refs == 0 && !detached) {
-      if (!isFreed.getAndSet(true)) {
-        try {
-          _free();
-        } catch (LifecycleException e) {
-          if (!inFinalizer.get())
-            logger.info("Error freeing resources: " + referenceReport(true, isFreed(), true));
-          throw e;
-        }
-      }
+    return refs;
+  }
+
+  private boolean isBiasedToCurrentThread() {
+    return bias.thread == Thread.currentThread() && 0 == (state & MERGED);
+  }
+
+  private int freeBiasedRef() {
+    if (!bias.queue.isEmpty()) {
+      bias.drain();
+      if (!isBiasedToCurrentThread()) return freeRef();
+    }
+    if (WATCH_ENABLED) traceFreeRef(null);
+    if (--biasedRefs > 0) {
+      return count(state) + biasedRefs;
+    }
+    return mergeBias();
+  }
+
+  /**
+   * Publishes the owner's biased count into the shared count; must only be called by the owning thread, or by any
+   * thread once the owner has terminated.
+   */
+  private int mergeBias() {
+    long prev;
+    long next;
+    do {
+      prev = state;
+      if (0 != (prev & MERGED)) return count(prev);
+      next = (withCount(prev, count(prev) + biasedRefs) | MERGED) & ~QUEUED;
+      if (count(next) == 0 && 0 == (next & DETACHED) && 0 == (next & FREED)) next |= FREED;
+    } while (!STATE.compareAndSet(this, prev, next));
+    biasedRefs = 0;
+    int refs = count(next);
+    if (refs < 0 && 0 == (next & DETACHED)) {
+      logger.warn(String.format("Error freeing reference for %s", getClass().getSimpleName()));
+      logger.warn(referenceReport(true, isFreed(), true));
+      throw new LifecycleException(this);
+    }
+    if (0 == (prev & FREED) && 0 != (next & FREED)) {
+      doFree();
     }
     return refs;
   }
 
+  private void doFree() {
+    Reclaimer reclaimer = this.reclaimer;
+    if (null != reclaimer) reclaimer.release();
+    if (asyncFreeClasses.get(getClass())) {
+      RefFreeExecutor.submit(this::_free);
+    } else if (ITERATIVE_FREE) {
+      freeQueue.get().free(this);
+    } else {
+      runFree();
+    }
+  }
+
+  private void runFree() {
+    try {
+      _free();
+    } catch (LifecycleException e) {
+      if (!inFinalizer.get())
+        logger.info("Error freeing resources: " + referenceReport(true, isFreed(), true));
+      throw e;
+    }
+  }
+
   public String referenceHeader() {
-    LinkedList<StackTraceElement[]> addRef = this.addRef == null ? new LinkedList<>() : this.addRef;
-    LinkedList<StackTraceElement[]> freeRefs = this.freeRefs == null ? new LinkedList<>() : this.freeRefs;
-    return String.format("Object %s (%d refs; %d adds, %d frees) ", getClass().getName(), references.get(), 1 + addRef.size(), freeRefs.size());
+    TraceBuffer addRef = getAddRefs();
+    TraceBuffer freeRefs = getFreeRefs();
+    return String.format("Object %s (%d refs; %d adds, %d frees) ", getClass().getName(), currentRefCount(),
+        1 + (addRef == null ? 0 : addRef.size()), freeRefs == null ? 0 : freeRefs.size());
   }
 
   public String referenceReport(boolean includeCaller, boolean isFinalized, boolean includeHeader) {
@@ -274,73 +438,81 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
     @Nonnull
     PrintStream out = new PrintStream(buffer);
-    LinkedList<StackTraceElement[]> addRef = this.addRef == null ? new LinkedList<>() : this.addRef;
-    LinkedList<StackTraceElement[]> freeRefs = this.freeRefs == null ? new LinkedList<>() : this.freeRefs;
-    if (includeHeader) out.print(
-        String.format("Object %s (%d refs; %d adds, %d frees) ", getClass().getName(), references.get(), 1 + addRef.size(), freeRefs.size()));
+    if (includeHeader) out.print(referenceHeader());
+    printTraces(out, this.traces, isFinalized);
+    if (includeCaller)
+      out.println(String.format("apply current stack \n\t%s",
+          getString(getStackTrace()).replaceAll("\n", "\n\t")));
+    out.close();
+    return buffer.toString();
+  }
+
+  private static void printTraces(@Nonnull PrintStream out, @Nullable Traces traces, boolean isFinalized) {
+    StackFrame[] refCreatedBy = traces == null ? null : traces.createdBy;
+    List<TraceBuffer.Event> addRef = traces == null || traces.addRef == null ? new ArrayList<>() : traces.addRef.snapshot();
+    List<TraceBuffer.Event> freeRefs = traces == null || traces.freeRefs == null ? new ArrayList<>() : traces.freeRefs.snapshot();
 //    List<StackTraceElement> prefix = reverseCopy(findCommonPrefix(
 //        Stream.concat(Stream.<StackTraceElement[]>of(refCreatedBy), Stream.concat(addRef.stream(), freeRefs.stream()))
 //            .filter(x -> x != null).map(x -> reverseCopy(x)).collect(Collectors.toList())));
 
     if (null != refCreatedBy) {
       //trace = removeSuffix(trace, prefix);
-      out.println(String.format("created by \n\t%s", getString(this.refCreatedBy).replaceAll("\n", "\n\t")));
+      out.println(String.format("created by \n\t%s", getString(refCreatedBy).replaceAll("\n", "\n\t")));
     }
     for (int i = 0; i < addRef.size(); i++) {
       try {
-        StackTraceElement[] stack = addRef.get(i);
-        if (null == stack) stack = new StackTraceElement[]{};
+        TraceBuffer.Event event = addRef.get(i);
         //stack = removeSuffix(stack, prefix);
-        final String string = getString(stack);
+        final String string = getString(event.frames);
         if (!string.trim().isEmpty())
-          out.println(String.format("reference added by %s\n\t%s", "", string.replaceAll("\n", "\n\t")));
+          out.println(String.format("reference added by %s\n\t%s", describe(event), string.replaceAll("\n", "\n\t")));
       } catch (Throwable e) {
         e.printStackTrace();
       }
     }
     for (int i = 0; i < freeRefs.size() - (isFinalized ? 1 : 0); i++) {
       try {
-        StackTraceElement[] stack = freeRefs.get(i);
-        if (null == stack) stack = new StackTraceElement[]{};
+        TraceBuffer.Event event = freeRefs.get(i);
 //          stack = removeSuffix(stack, prefix);
-        final String string = getString(stack);
+        final String string = getString(event.frames);
         if (!string.trim().isEmpty())
-          out.println(String.format("reference removed by %s\n\t%s", "", string.replaceAll("\n", "\n\t")));
+          out.println(String.format("reference removed by %s\n\t%s", describe(event), string.replaceAll("\n", "\n\t")));
       } catch (Throwable e) {
         e.printStackTrace();
       }
     }
     if (isFinalized && 0 < freeRefs.size()) {
       try {
-        StackTraceElement[] stack = freeRefs.get(freeRefs.size() - 1);
+        TraceBuffer.Event event = freeRefs.get(freeRefs.size() - 1);
 //          stack = removeSuffix(stack, prefix);
-        final String string = 0 == freeRefs.size() ? "" : getString(stack);
+        final String string = getString(event.frames);
         if (!string.trim().isEmpty())
-          out.println(String.format("freed by %s\n\t%s", "", string.replaceAll("\n", "\n\t")));
+          out.println(String.format("freed by %s\n\t%s", describe(event), string.replaceAll("\n", "\n\t")));
       } catch (Throwable e) {
         e.printStackTrace();
       }
     }
-    if (includeCaller)
-      out.println(String.format("apply current stack \n\t%s",
-          getString(getStackTrace()).replaceAll("\n", "\n\t")));
-    out.close();
-    return buffer.toString();
+  }
+
+  @Nonnull
+  private static String describe(@Nonnull TraceBuffer.Event event) {
+    return String.format("thread %d at %.9f", event.threadId, (event.time - LOAD_TIME) / 1e9);
   }
 
   @Override
   public boolean tryAddRef() {
-    if (references.updateAndGet(i -> i > 0 ? i + 1 : 0) == 0) {
-      return false;
+    if (null != bias && isBiasedToCurrentThread()) {
+      biasedRefs++;
+      if (WATCH_ENABLED) traceAddRef();
+      return true;
     }
-    if (null != addRef) {
-      StackTraceElement[] stackTrace = getStackTrace();
-      if (null != stackTrace) {
-        synchronized (addRef) {
-          addRef.add(stackTrace);
-        }
+    long prev = state;
+    if (count(prev) <= 0 || !STATE.compareAndSet(this, prev, prev + 1)) {
+      if (!incrementRefs()) {
+        return false;
       }
     }
+    if (WATCH_ENABLED) traceAddRef();
     return true;
   }
 
@@ -348,23 +520,85 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
   protected void _free() {
   }
 
-  @Override
-  protected final void finalize() {
-    isFinalized = true;
-    if (!isFreed.getAndSet(true)) {
+  /**
+   * Registers an action that releases this object's resources if it becomes unreachable without being freed while
+   * {@link RefSettings#cleanerEnable} is set. A Cleaner cannot call {@link #_free()} on an unreachable instance, so
+   * subclasses that own resources should keep them in a holder that does not reference this object, release them
+   * through that holder from {@link #_free()}, and pass the same holder here; it then runs once, by whichever path
+   * comes first. In the default mode leaked objects are released by {@link #_free()} and the action is not kept.
+   */
+  protected final void addReclaimAction(@Nonnull Runnable action) {
+    if (CLEANER_ENABLED) reclaimer().addAction(action);
+  }
+
+  @Nonnull
+  private synchronized Reclaimer reclaimer() {
+    Reclaimer reclaimer = this.reclaimer;
+    if (null == reclaimer) {
+      reclaimer = new Reclaimer(getClass().getName(), traces, isDetached());
+      reclaimer.cleanable = cleaner.register(this, reclaimer);
+      this.reclaimer = reclaimer;
+    }
+    return reclaimer;
+  }
+
+  private boolean incrementRefs() {
+    long prev;
+    do {
+      prev = state;
+      if (null != bias && 0 == (prev & (MERGED | FREED))) {
+        if (STATE.compareAndSet(this, prev, withCount(prev, count(prev) + 1))) return true;
+        continue;
+      }
+      if (count(prev) <= 0) {
+        STATE.compareAndSet(this, prev, withCount(prev, 0));
+        return false;
+      }
+    } while (!STATE.compareAndSet(this, prev, withCount(prev, count(prev) + 1)));
+    return true;
+  }
+
+  private void traceAddRef() {
+    TraceBuffer addRef = getAddRefs();
+    if (null != addRef) {
+      addRef.add(getStackTrace());
+    }
+  }
+
+  private void traceFreeRef(@Nullable StackFrame[] stackTrace) {
+    TraceBuffer freeRefs = getFreeRefs();
+    if (null != freeRefs) {
+      freeRefs.add(null == stackTrace ? getStackTrace() : stackTrace);
+    }
+  }
+
+  @Nullable
+  private TraceBuffer getAddRefs() {
+    Traces traces = this.traces;
+    return traces == null ? null : traces.addRef;
+  }
+
+  @Nullable
+  private TraceBuffer getFreeRefs() {
+    Traces traces = this.traces;
+    return traces == null ? null : traces.freeRefs;
+  }
+
+  /**
+   * Frees an object that became unreachable while still referenced; run from the {@link FinalizerGuardian}.
+   */
+  private void reclaim() {
+    long prev = (long) STATE.getAndBitwiseOr(this, FREED | FINALIZED);
+    if (0 == (prev & FREED)) {
       if (!isDetached() && !supressLog) {
         if (logger.isDebugEnabled()) {
           logger.debug(String.format("Instance Reclaimed by GC at %.9f: %s", (System.nanoTime() - LOAD_TIME) / 1e9,
               referenceReport(false, false, true)));
         }
       }
+      TraceBuffer freeRefs = getFreeRefs();
       if (null != freeRefs) {
-        StackTraceElement[] stackTrace = getStackTrace();
-        if (null != stackTrace) {
-          synchronized (freeRefs) {
-            freeRefs.add(stackTrace);
-          }
-        }
+        freeRefs.add(getStackTrace());
       }
       inFinalizer.set(true);
       try {
@@ -375,4 +609,182 @@ public abstract class ReferenceCountingBase implements ReferenceCounting {
     }
   }
 
+  /**
+   * Finalizer guardian for the default mode. Keeping the finalizer here rather than on {@link ReferenceCountingBase}
+   * itself is what lets Cleaner mode allocate instances that are not finalizable at all.
+   */
+  private final class FinalizerGuardian {
+    @Override
+    protected void finalize() {
+      reclaim();
+    }
+  }
+
+  /**
+   * Cleaner-mode leak handler. It must not reference the object it watches, so it keeps its own copy of what the leak
+   * path needs: the class name, the traces and the detached flag for the report, and the reclaim actions that stand in
+   * for {@link #_free()}. An explicit free marks it released and deregisters it from the Cleaner.
+   */
+  private static final class Reclaimer implements Runnable {
+    private final String className;
+    @Nullable
+    volatile Traces traces;
+    volatile boolean detached;
+    private volatile boolean released = false;
+    @Nullable
+    Cleaner.Cleanable cleanable;
+    @Nullable
+    private List<Runnable> actions = null;
+
+    private Reclaimer(@Nonnull String className, @Nullable Traces traces, boolean detached) {
+      this.className = className;
+      this.traces = traces;
+      this.detached = detached;
+    }
+
+    synchronized void addAction(@Nonnull Runnable action) {
+      if (null == actions) actions = new ArrayList<>();
+      actions.add(action);
+    }
+
+    void release() {
+      released = true;
+      cleanable.clean();
+    }
+
+    @Override
+    public void run() {
+      if (released) return;
+      if (!detached && !supressLog && logger.isDebugEnabled()) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer);
+        out.print(String.format("Object %s (unreachable) ", className));
+        printTraces(out, traces, false);
+        out.close();
+        logger.debug(String.format("Instance Reclaimed by GC at %.9f: %s", (System.nanoTime() - LOAD_TIME) / 1e9,
+            buffer.toString()));
+      }
+      List<Runnable> actions;
+      synchronized (this) {
+        actions = this.actions;
+        this.actions = null;
+      }
+      if (null == actions) return;
+      inFinalizer.set(true);
+      try {
+        for (Runnable action : actions) {
+          try {
+            action.run();
+          } catch (Throwable e) {
+            logger.warn("Error reclaiming " + className, e);
+          }
+        }
+      } finally {
+        inFinalizer.set(false);
+      }
+    }
+  }
+
+  /**
+   * Per-thread work list for {@link RefSettings#iterativeFree}: objects released while another object's
+   * {@link #_free()} is running on the same thread are queued and freed by the outermost call, so freeing deep
+   * object graphs runs at constant stack depth.
+   */
+  private static final class FreeQueue {
+    private final ArrayDeque<ReferenceCountingBase> queue = new ArrayDeque<>();
+    private boolean draining = false;
+
+    void free(@Nonnull ReferenceCountingBase obj) {
+      queue.add(obj);
+      if (draining) return;
+      draining = true;
+      RuntimeException error = null;
+      try {
+        ReferenceCountingBase next;
+        while (null != (next = queue.poll())) {
+          try {
+            next.runFree();
+          } catch (RuntimeException e) {
+            if (null == error) error = e;
+            else error.addSuppressed(e);
+          }
+        }
+      } finally {
+        draining = false;
+      }
+      if (null != error) throw error;
+    }
+  }
+
+  /**
+   * The objects biased to one thread that other threads have released past their shared count. While the owner is
+   * alive only it can merge them, since the biased counts are plain fields; it does so on its next biased free or
+   * {@link #flushBiasedRefs()}. Once it has terminated any thread may: the releasing thread merges immediately, and a
+   * sweep every {@link RefSettings#biasSweepMillis} merges objects queued before the owner died.
+   */
+  private static final class BiasOwner {
+    private static final ConcurrentLinkedQueue<BiasOwner> pending = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ref-bias-sweep-%d").build());
+    final Thread thread = Thread.currentThread();
+    final ConcurrentLinkedQueue<ReferenceCountingBase> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean registered = new AtomicBoolean(false);
+
+    private static void sweep() {
+      Iterator<BiasOwner> iterator = pending.iterator();
+      while (iterator.hasNext()) {
+        BiasOwner owner = iterator.next();
+        if (!owner.thread.isAlive()) {
+          try {
+            owner.drain();
+          } catch (Throwable e) {
+            logger.warn("Error freeing biased references of terminated thread " + owner.thread.getName(), e);
+          }
+        }
+        if (owner.queue.isEmpty()) {
+          iterator.remove();
+          owner.registered.set(false);
+          if (!owner.queue.isEmpty()) owner.register();
+        }
+      }
+    }
+
+    void enqueue(@Nonnull ReferenceCountingBase obj) {
+      queue.add(obj);
+      if (!thread.isAlive()) drain();
+      else register();
+    }
+
+    private void register() {
+      if (registered.compareAndSet(false, true)) {
+        pending.add(this);
+        if (sweeping.compareAndSet(false, true)) {
+          long period = RefSettings.INSTANCE().biasSweepMillis;
+          sweeper.scheduleWithFixedDelay(BiasOwner::sweep, period, period, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+
+    void drain() {
+      ReferenceCountingBase obj;
+      while (null != (obj = queue.poll())) {
+        obj.mergeBias();
+      }
+    }
+  }
+
+  private static final class Traces {
+    @Nullable
+    final StackFrame[] createdBy;
+    @Nullable
+    volatile TraceBuffer addRef = null;
+    @Nullable
+    volatile TraceBuffer freeRefs = null;
+
+    private Traces(@Nullable StackFrame[] createdBy) {
+      this.createdBy = createdBy;
+    }
+  }
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+/**
+ * Maps requested lengths onto the bucket keys used by {@link RecycleBin}. A request is rounded up to its class with
+ * {@link #ceil(long)}, and a recycled buffer is filed under the largest class it can satisfy with {@link #floor(long)},
+ * so every buffer in a bucket is at least as long as the bucket's key.
+ */
+@RefIgnore
+public enum SizeClass {
+  EXACT {
+    @Override
+    public long ceil(long length) {
+      return length;
+    }
+
+    @Override
+    public long floor(long length) {
+      return length;
+    }
+  },
+  POWER_OF_TWO {
+    @Override
+    public long ceil(long length) {
+      if (length <= 1) return length;
+      return Long.highestOneBit(length - 1) << 1;
+    }
+
+    @Override
+    public long floor(long length) {
+      if (length <= 1) return length;
+      return Long.highestOneBit(length);
+    }
+  },
+  /**
+   * Four classes per power of two, as in jemalloc's size-class spacing; wastes at most a quarter of each buffer.
+   */
+  QUARTER_POWER_OF_TWO {
+    @Override
+    public long ceil(long length) {
+      long step = step(length);
+      return (length + step - 1) / step * step;
+    }
+
+    @Override
+    public long floor(long length) {
+      long step = step(length);
+      return length / step * step;
+    }
+
+    private long step(long length) {
+      return Math.max(1, Long.highestOneBit(Math.max(1, length)) >> 2);
+    }
+  };
+
+  public abstract long ceil(long length);
+
+  public abstract long floor(long length);
+}
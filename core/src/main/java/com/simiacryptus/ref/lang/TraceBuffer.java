@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import javax.annotation.Nonnull;
+import java.lang.StackWalker.StackFrame;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity, lock-free history of lifecycle events. Once full, new events overwrite the oldest ones so the
+ * most recent history is always retained.
+ */
+@RefIgnore
+final class TraceBuffer {
+  private final AtomicReferenceArray<Event> events;
+  private final AtomicLong count = new AtomicLong();
+
+  TraceBuffer(int capacity) {
+    this.events = new AtomicReferenceArray<>(Math.max(1, capacity));
+  }
+
+  public void add(@Nonnull StackFrame[] frames) {
+    long seq = count.getAndIncrement();
+    events.set((int) (seq % events.length()), new Event(seq, frames));
+  }
+
+  public long size() {
+    return count.get();
+  }
+
+  @Nonnull
+  public List<Event> snapshot() {
+    long end = count.get();
+    long start = Math.max(0, end - events.length());
+    List<Event> list = new ArrayList<>((int) (end - start));
+    for (long seq = start; seq < end; seq++) {
+      Event event = events.get((int) (seq % events.length()));
+      if (null != event && event.seq == seq) list.add(event);
+    }
+    return list;
+  }
+
+  @RefIgnore
+  static final class Event {
+    final long seq;
+    final long time = System.nanoTime();
+    final long threadId = Thread.currentThread().getId();
+    @Nonnull
+    final StackFrame[] frames;
+
+    private Event(long seq, @Nonnull StackFrame[] frames) {
+      this.seq = seq;
+      this.frames = frames;
+    }
+  }
+}
@@ -33,6 +33,11 @@ import java.util.stream.Collector;
 @RefIgnore
 @SuppressWarnings("unused")
 public class RefCollectors {
+  private static final Set<Collector.Characteristics> CH_CONCURRENT_ID = Collections.unmodifiableSet(EnumSet.of(
+      Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH));
+  private static final Set<Collector.Characteristics> CH_CONCURRENT_NOID = Collections.unmodifiableSet(EnumSet.of(
+      Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED));
+
   @Nonnull
   public static <T> RefCollector<T, ?, RefList<T>> toList() {
     return new RefCollector<>(() -> new RefArrayList<T>(), (RefArrayList<T> list, T element) -> {
@@ -98,6 +103,43 @@ public class RefCollectors {
     );
   }
 
+  @Nonnull
+  public static <T, K, U> RefCollector<T, ?, RefConcurrentHashMap<K, U>> toConcurrentMap(
+      @Nonnull @RefAware Function<? super T, ? extends K> keyMapper,
+      @Nonnull @RefAware Function<? super T, ? extends U> valueMapper) {
+    return toConcurrentMap(keyMapper, valueMapper, (u, v) -> {
+      throw new IllegalStateException(String.format("Duplicate key %s", u));
+    }, () -> new RefConcurrentHashMap<K, U>());
+  }
+
+  @Nonnull
+  public static <T, K, U> RefCollector<T, ?, RefConcurrentHashMap<K, U>> toConcurrentMap(
+      @Nonnull @RefAware Function<? super T, ? extends K> keyMapper,
+      @Nonnull @RefAware Function<? super T, ? extends U> valueMapper,
+      @RefAware BinaryOperator<U> mergeFunction) {
+    return toConcurrentMap(keyMapper, valueMapper, mergeFunction, () -> new RefConcurrentHashMap<K, U>());
+  }
+
+  /**
+   * Like {@link #toMap(Function, Function, BinaryOperator, Supplier)}, but {@link Collector.Characteristics#CONCURRENT}:
+   * a parallel {@link RefStream#collect(Collector)} accumulates every element into one shared map,
+   * relying on the per-key atomic merge of {@link RefConcurrentHashMap}, instead of building one map per split
+   * and merging them.
+   */
+  @Nonnull
+  public static <T, K, U, M extends RefConcurrentHashMap<K, U>> RefCollector<T, ?, M> toConcurrentMap(
+      @Nonnull @RefAware Function<? super T, ? extends K> keyMapper,
+      @Nonnull @RefAware Function<? super T, ? extends U> valueMapper,
+      @RefAware BinaryOperator<U> mergeFunction,
+      @RefAware Supplier<M> mapSupplier) {
+    final RefCollector<T, ?, M> collector = toMap(keyMapper, valueMapper, mergeFunction, mapSupplier);
+    try {
+      return concurrent(collector);
+    } finally {
+      collector.freeRef();
+    }
+  }
+
   @Nonnull
   public static <T, K> RefCollector<T, ?, RefMap<K, RefList<T>>> groupingBy(
       @Nonnull @RefAware RefFunction<? super T, ? extends K> classifier) {
@@ -159,6 +201,77 @@ public class RefCollectors {
     return collector;
   }
 
+  @Nonnull
+  public static <T, K> RefCollector<T, ?, RefConcurrentHashMap<K, RefList<T>>> groupingByConcurrent(
+      @Nonnull @RefAware RefFunction<? super T, ? extends K> classifier) {
+    return groupingByConcurrent(classifier, toList());
+  }
+
+  @Nonnull
+  public static <T, K, A, D> RefCollector<T, ?, RefConcurrentHashMap<K, D>> groupingByConcurrent(
+      @Nonnull @RefAware RefFunction<? super T, ? extends K> classifier,
+      @Nonnull @RefAware RefCollector<? super T, A, D> downstream) {
+    return groupingByConcurrent(classifier, () -> new RefConcurrentHashMap<K, D>(), downstream);
+  }
+
+  /**
+   * Concurrent counterpart of {@link #groupingBy(RefFunction, Supplier, RefCollector)}. Groups are created with the
+   * per-key atomic {@link RefConcurrentHashMap#computeIfAbsent}, so threads only contend on the same group;
+   * a downstream collector that is not itself {@link Collector.Characteristics#CONCURRENT} is fed under the
+   * group container's monitor.
+   */
+  @Nonnull
+  public static <T, K, D, A, M extends RefConcurrentHashMap<K, D>> RefCollector<T, RefConcurrentHashMap<K, A>, M> groupingByConcurrent(
+      @Nonnull @RefAware RefFunction<? super T, ? extends K> classifier,
+      @RefAware Supplier<M> mapFactory,
+      @Nonnull @RefAware RefCollector<? super T, A, D> downstream) {
+    final Supplier<A> downstream_supplier = downstream.supplier();
+    final BiConsumer<A, ? super T> downstream_accumulator = downstream.accumulator();
+    final Set<Collector.Characteristics> downstream_characteristics = downstream.characteristics();
+    final boolean downstream_concurrent = downstream_characteristics.contains(Collector.Characteristics.CONCURRENT);
+    final BiConsumer<RefConcurrentHashMap<K, A>, T> consumer = RefUtil.wrapInterface((map, value) -> {
+      final A a = map.computeIfAbsent(classifier.apply(RefUtil.addRef(value)), k1 -> {
+        RefUtil.freeRef(k1);
+        return downstream_supplier.get();
+      });
+      map.freeRef();
+      if (downstream_concurrent) {
+        downstream_accumulator.accept(a, value);
+      } else {
+        synchronized (a) {
+          downstream_accumulator.accept(a, value);
+        }
+      }
+    }, classifier, downstream_accumulator, downstream_supplier);
+    final BinaryOperator<RefConcurrentHashMap<K, A>> combiner = RefCollectors.mapMerger(downstream.combiner());
+    final Supplier<RefConcurrentHashMap<K, A>> supplier = (Supplier<RefConcurrentHashMap<K, A>>) mapFactory;
+    final RefCollector<T, RefConcurrentHashMap<K, A>, M> collector;
+    if (downstream_characteristics.contains(Collector.Characteristics.IDENTITY_FINISH)) {
+      collector = new RefCollector<>(
+          supplier,
+          consumer,
+          combiner,
+          CH_CONCURRENT_ID);
+    } else {
+      final RefFunction<A, D> downstream_finisher = downstream.finisher();
+      RefFunction<RefConcurrentHashMap<K, A>, M> finisher = RefUtil.wrapInterface((RefConcurrentHashMap<K, A> intermediate) -> {
+        try {
+          return (M) intermediate.mapValues(RefUtil.addRef(downstream_finisher));
+        } finally {
+          intermediate.freeRef();
+        }
+      }, downstream_finisher);
+      collector = new RefCollector<>(
+          supplier,
+          consumer,
+          combiner,
+          finisher,
+          CH_CONCURRENT_NOID);
+    }
+    RefUtil.freeRef(downstream);
+    return collector;
+  }
+
   @Nonnull
   public static <T, U, A, R> RefCollector<T, ?, R> mapping(
       @Nonnull @RefAware Function<? super T, ? extends U> mapper,
@@ -264,6 +377,17 @@ public class RefCollectors {
         stringJoiner -> stringJoiner.toString(), Collections.emptySet());
   }
 
+  @Nonnull
+  private static <T, A, R> RefCollector<T, A, R> concurrent(
+      @Nonnull RefCollector<T, A, R> collector) {
+    return new RefCollector<>(
+        collector.supplier(),
+        collector.accumulator(),
+        collector.combiner(),
+        collector.finisher(),
+        CH_CONCURRENT_ID);
+  }
+
   @Nonnull
   private static <K, V, M extends RefMap<K, V>> BinaryOperator<M> mapMerger(
       @Nonnull @RefAware BinaryOperator<V> mergeFunction) {
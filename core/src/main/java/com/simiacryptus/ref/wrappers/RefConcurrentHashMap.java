@@ -21,16 +21,20 @@ package com.simiacryptus.ref.wrappers;
 
 import com.simiacryptus.ref.lang.RefAware;
 import com.simiacryptus.ref.lang.RefIgnore;
+import com.simiacryptus.ref.lang.RefUtil;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 @RefIgnore
 @SuppressWarnings("unused")
 public class RefConcurrentHashMap<K, V> extends RefAbstractMap<K, V> {
   @Nonnull
-  private final Map<K, KeyValue<K, V>> inner;
+  private final ConcurrentHashMap<K, KeyValue<K, V>> inner;
 
   public RefConcurrentHashMap() {
     this.inner = new ConcurrentHashMap<>();
@@ -47,4 +51,74 @@ public class RefConcurrentHashMap<K, V> extends RefAbstractMap<K, V> {
     return inner;
   }
 
+  /**
+   * Atomic per key, like {@link ConcurrentHashMap#computeIfAbsent}; the default
+   * {@link RefMap} implementation is a separate get and put.
+   */
+  @Nullable
+  @Override
+  @RefAware
+  public V computeIfAbsent(@RefAware K key, @Nonnull @RefAware Function<? super K, ? extends V> mappingFunction) {
+    assertAlive();
+    final Object[] result = new Object[1];
+    try {
+      inner.compute(key, (k, kv) -> {
+        if (null == kv) {
+          final V value = mappingFunction.apply(RefUtil.addRef(k));
+          if (null == value) return null;
+          kv = new KeyValue<>(RefUtil.addRef(k), value);
+        }
+        result[0] = RefUtil.addRef(kv.value);
+        return kv;
+      });
+      return (V) result[0];
+    } finally {
+      RefUtil.freeRef(key);
+      RefUtil.freeRef(mappingFunction);
+    }
+  }
+
+  /**
+   * Atomic per key instead of locking the whole map as {@link RefMap#merge} does,
+   * so concurrent collectors only contend on equal keys.
+   */
+  @Override
+  @RefAware
+  public V merge(@RefAware K key,
+                 @RefAware V value,
+                 @Nonnull @RefAware BiFunction<? super V, ? super V, ? extends V> fn) {
+    assertAlive();
+    final Object[] result = new Object[1];
+    try {
+      inner.compute(key, (k, kv) -> {
+        if (null == kv) {
+          result[0] = RefUtil.addRef(value);
+          return new KeyValue<>(RefUtil.addRef(k), value);
+        }
+        final V newValue = fn.apply(kv.value, value);
+        if (null == newValue) {
+          RefUtil.freeRef(kv.key);
+          return null;
+        }
+        result[0] = RefUtil.addRef(newValue);
+        return new KeyValue<>(kv.key, newValue);
+      });
+      return (V) result[0];
+    } finally {
+      RefUtil.freeRef(key);
+      RefUtil.freeRef(fn);
+    }
+  }
+
+  @Nonnull
+  @Override
+  public <D> RefMap<K, V> mapValues(RefFunction<V, D> mapper) {
+    final RefConcurrentHashMap<K, V> map = new RefConcurrentHashMap<>();
+    forEach((k, v) -> {
+      RefUtil.freeRef(map.put(k, (V) mapper.apply(v)));
+    });
+    RefUtil.freeRef(mapper);
+    return map;
+  }
+
 }
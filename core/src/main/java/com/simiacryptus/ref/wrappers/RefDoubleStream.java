@@ -20,12 +20,9 @@
 package com.simiacryptus.ref.wrappers;
 
 import com.simiacryptus.ref.lang.*;
-import com.simiacryptus.ref.wrappers.RefStream.IdentityWrapper;
 
 import javax.annotation.Nonnull;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.stream.DoubleStream;
 
@@ -33,21 +30,21 @@ import java.util.stream.DoubleStream;
 @SuppressWarnings("unused")
 public class RefDoubleStream implements DoubleStream {
   private final DoubleStream inner;
-  private final Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs;
+  private final RefLedger refs;
   private final List<ReferenceCounting> lambdas;
 
   RefDoubleStream(@RefAware DoubleStream stream) {
-    this(stream, new ArrayList<>(), new ConcurrentHashMap<>());
+    this(stream, new ArrayList<>(), new RefLedger());
   }
 
   RefDoubleStream(@RefAware DoubleStream stream, @RefAware List<ReferenceCounting> lambdas,
-                  @RefAware Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
+                  @RefAware RefLedger refs) {
     this.lambdas = lambdas;
     this.refs = refs;
     if (stream instanceof ReferenceCounting)
       throw new IllegalArgumentException("inner class cannot be ref-aware");
     this.inner = stream.onClose(() -> {
-      RefStream.freeAll(refs);
+      refs.freeAll();
       synchronized (lambdas) {
         lambdas.forEach(referenceCounting -> referenceCounting.freeRef());
         lambdas.clear();
@@ -148,7 +145,7 @@ public class RefDoubleStream implements DoubleStream {
   @Nonnull
   public RefDoubleStream filter(@Nonnull @RefAware DoublePredicate predicate) {
     track(predicate);
-    return new RefDoubleStream(inner.filter((double t) -> predicate.test(RefUtil.addRef(t))), lambdas, refs);
+    return new RefDoubleStream(inner.filter(predicate), lambdas, refs);
   }
 
   @Override
@@ -169,7 +166,7 @@ public class RefDoubleStream implements DoubleStream {
   @Override
   public RefDoubleStream flatMap(@Nonnull @RefAware DoubleFunction<? extends DoubleStream> mapper) {
     track(mapper);
-    return new RefDoubleStream(inner.flatMap((double t) -> mapper.apply(t).map(u -> storeRef(u))), lambdas, refs);
+    return new RefDoubleStream(inner.flatMap(mapper), lambdas, refs);
   }
 
   public void forEach(@Nonnull @RefAware DoubleConsumer action) {
@@ -213,14 +210,14 @@ public class RefDoubleStream implements DoubleStream {
   @Override
   public RefIntStream mapToInt(@Nonnull @RefAware DoubleToIntFunction mapper) {
     track(mapper);
-    return new RefIntStream(inner.mapToInt((double value) -> mapper.applyAsInt(getRef(value))), lambdas, refs);
+    return new RefIntStream(inner.mapToInt(mapper), lambdas, refs);
   }
 
   @Nonnull
   @Override
   public RefLongStream mapToLong(@Nonnull @RefAware DoubleToLongFunction mapper) {
     track(mapper);
-    return new RefLongStream(inner.mapToLong((double value) -> mapper.applyAsLong(getRef(value))), lambdas, refs);
+    return new RefLongStream(inner.mapToLong(mapper), lambdas, refs);
   }
 
   @Nonnull
@@ -246,7 +243,7 @@ public class RefDoubleStream implements DoubleStream {
   @Override
   public boolean noneMatch(@Nonnull @RefAware DoublePredicate predicate) {
     track(predicate);
-    final boolean match = inner.noneMatch((double t) -> predicate.test(getRef(t)));
+    final boolean match = inner.noneMatch(predicate);
     close();
     return match;
   }
@@ -268,14 +265,13 @@ public class RefDoubleStream implements DoubleStream {
   @Override
   public RefDoubleStream peek(@Nonnull @RefAware DoubleConsumer action) {
     track(action);
-    return new RefDoubleStream(inner.peek((double t) -> action.accept(getRef(t))), lambdas, refs);
+    return new RefDoubleStream(inner.peek(action), lambdas, refs);
   }
 
   @Override
   public double reduce(double identity, @Nonnull @RefAware DoubleBinaryOperator accumulator) {
     track(accumulator);
-    final double reduce = inner.reduce(storeRef(identity),
-        (double t, double u) -> storeRef(accumulator.applyAsDouble(getRef(t), getRef(u))));
+    final double reduce = inner.reduce(identity, accumulator);
     close();
     return reduce;
   }
@@ -283,8 +279,7 @@ public class RefDoubleStream implements DoubleStream {
   @Override
   public OptionalDouble reduce(@Nonnull @RefAware DoubleBinaryOperator accumulator) {
     track(accumulator);
-    final OptionalDouble optionalDouble = inner
-        .reduce((double t, double u) -> accumulator.applyAsDouble(t, u));
+    final OptionalDouble optionalDouble = inner.reduce(accumulator);
     close();
     return optionalDouble;
   }
@@ -23,8 +23,6 @@ import com.simiacryptus.ref.lang.*;
 
 import javax.annotation.Nonnull;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.stream.IntStream;
 
@@ -32,21 +30,21 @@ import java.util.stream.IntStream;
 @SuppressWarnings("unused")
 public class RefIntStream implements IntStream {
   private final IntStream inner;
-  private final Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> refs;
+  private final RefLedger refs;
   private final List<ReferenceCounting> lambdas;
 
   RefIntStream(@RefAware IntStream stream) {
-    this(stream, new ArrayList<>(), new ConcurrentHashMap<>());
+    this(stream, new ArrayList<>(), new RefLedger());
   }
 
   RefIntStream(@RefAware IntStream stream, @RefAware List<ReferenceCounting> lambdas,
-               @RefAware Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
+               @RefAware RefLedger refs) {
     this.lambdas = lambdas;
     this.refs = refs;
     if (stream instanceof ReferenceCounting)
       throw new IllegalArgumentException("inner class cannot be ref-aware");
     this.inner = stream.onClose(() -> {
-      RefStream.freeAll(refs);
+      refs.freeAll();
       synchronized (lambdas) {
         lambdas.forEach(referenceCounting -> referenceCounting.freeRef());
         lambdas.clear();
@@ -81,9 +79,7 @@ public class RefIntStream implements IntStream {
 
   @Nonnull
   public static RefIntStream of(@Nonnull int... array) {
-    return new RefIntStream(IntStream.of(array).onClose(() -> {
-      Arrays.stream(array).forEach(value -> RefUtil.freeRef(value));
-    }));
+    return new RefIntStream(IntStream.of(array));
   }
 
   @Nonnull
@@ -99,7 +95,7 @@ public class RefIntStream implements IntStream {
   @Override
   public boolean allMatch(@Nonnull @RefAware IntPredicate predicate) {
     track(predicate);
-    final boolean match = inner.allMatch((int t) -> predicate.test(getRef(t)));
+    final boolean match = inner.allMatch(predicate);
     close();
     return match;
   }
@@ -107,7 +103,7 @@ public class RefIntStream implements IntStream {
   @Override
   public boolean anyMatch(@Nonnull @RefAware IntPredicate predicate) {
     track(predicate);
-    final boolean match = inner.anyMatch((int t) -> predicate.test(getRef(t)));
+    final boolean match = inner.anyMatch(predicate);
     close();
     return match;
   }
@@ -192,7 +188,7 @@ public class RefIntStream implements IntStream {
   @Override
   public RefIntStream flatMap(@Nonnull @RefAware IntFunction<? extends IntStream> mapper) {
     track(mapper);
-    return new RefIntStream(inner.flatMap(mapper).map(u -> storeRef(u)), lambdas, refs);
+    return new RefIntStream(inner.flatMap(mapper), lambdas, refs);
   }
 
   @Override
@@ -268,7 +264,7 @@ public class RefIntStream implements IntStream {
   @Override
   public boolean noneMatch(@Nonnull @RefAware IntPredicate predicate) {
     track(predicate);
-    final boolean match = inner.noneMatch((int t) -> predicate.test(getRef(t)));
+    final boolean match = inner.noneMatch(predicate);
     close();
     return match;
   }
@@ -290,14 +286,13 @@ public class RefIntStream implements IntStream {
   @Override
   public RefIntStream peek(@Nonnull @RefAware IntConsumer action) {
     track(action);
-    return new RefIntStream(inner.peek((int t) -> action.accept(getRef(t))), lambdas, refs);
+    return new RefIntStream(inner.peek(action), lambdas, refs);
   }
 
   @Override
   public int reduce(int identity, @Nonnull @RefAware IntBinaryOperator accumulator) {
     track(accumulator);
-    final int reduce = inner.reduce(storeRef(identity),
-        (int t, int u) -> storeRef(accumulator.applyAsInt(getRef(t), getRef(u))));
+    final int reduce = inner.reduce(identity, accumulator);
     close();
     return reduce;
   }
@@ -305,7 +300,7 @@ public class RefIntStream implements IntStream {
   @Override
   public OptionalInt reduce(@Nonnull @RefAware IntBinaryOperator accumulator) {
     track(accumulator);
-    final OptionalInt reduce = inner.reduce((int t, int u) -> storeRef(accumulator.applyAsInt(getRef(t), getRef(u))));
+    final OptionalInt reduce = inner.reduce(accumulator);
     close();
     return reduce;
   }
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.wrappers;
+
+import com.simiacryptus.ref.lang.RefIgnore;
+import com.simiacryptus.ref.lang.ReferenceCounting;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the references a stream pipeline holds on behalf of its elements, keyed by identity.
+ * <p>
+ * The ledger is split into stripes chosen by thread, each an open-addressed identity table, so parallel workers record
+ * and reclaim references without allocating a wrapper per element. Each stripe keeps its own monitor: threads whose ids
+ * map to the same stripe share it, and a thread that misses in its own stripe looks in the others, so the lock is
+ * striped rather than removed. It is uncontended while each worker stays on its own stripe, which is the common case.
+ * <p>
+ * A reference stored by one worker and requested by another, as when a parallel reduction combines partial results, is
+ * found by that fallback search and handed over, so it is not held until the ledger is freed. Stripes that hold nothing
+ * are skipped without locking them.
+ */
+@RefIgnore
+final class RefLedger {
+  private static final int STRIPES = Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+  private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPES);
+  @Nullable
+  private Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> view;
+
+  /**
+   * Records one reference held by the ledger.
+   */
+  void store(@Nonnull ReferenceCounting obj) {
+    Stripe stripe = stripe();
+    synchronized (stripe) {
+      stripe.add(obj, 1);
+    }
+  }
+
+  /**
+   * Hands one stored reference to the caller, if the current thread's stripe holds any.
+   *
+   * @return true if a stored reference was transferred, false if the caller must take its own
+   */
+  boolean take(@Nonnull ReferenceCounting obj) {
+    int index = stripeIndex();
+    Stripe stripe = stripe(index);
+    synchronized (stripe) {
+      if (stripe.take(obj)) return true;
+    }
+    for (int i = 1; i < STRIPES; i++) {
+      Stripe other = stripes.get((index + i) & (STRIPES - 1));
+      if (null == other || 0 == other.held) continue;
+      synchronized (other) {
+        if (other.take(obj)) return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves every reference held by another ledger into this one.
+   */
+  void merge(@Nonnull RefLedger other) {
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe source = other.stripes.get(i);
+      if (null == source) continue;
+      Object[] keys;
+      int[] counts;
+      synchronized (source) {
+        keys = source.keys;
+        counts = source.counts;
+        source.clear();
+      }
+      Stripe target = stripe(i);
+      synchronized (target) {
+        for (int j = 0; j < keys.length; j++) {
+          if (null != keys[j] && counts[j] > 0) target.add(keys[j], counts[j]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases every reference still held and empties the ledger.
+   */
+  void freeAll() {
+    ArrayList<ReferenceCounting> held = new ArrayList<>();
+    ArrayList<Integer> heldCounts = new ArrayList<>();
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (null == stripe) continue;
+      synchronized (stripe) {
+        for (int j = 0; j < stripe.keys.length; j++) {
+          if (null != stripe.keys[j] && stripe.counts[j] > 0) {
+            held.add((ReferenceCounting) stripe.keys[j]);
+            heldCounts.add(stripe.counts[j]);
+          }
+        }
+        stripe.clear();
+      }
+    }
+    for (int i = 0; i < held.size(); i++) {
+      ReferenceCounting obj = held.get(i);
+      for (int j = heldCounts.get(i); j > 0; j--) {
+        obj.freeRef();
+      }
+    }
+  }
+
+  /**
+   * A read-only map view for the deprecated {@link RefStream#refs} field. Each read takes a snapshot of the held counts,
+   * so it costs a pass over every stripe.
+   */
+  @Nonnull
+  @SuppressWarnings("deprecation")
+  Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> asMap() {
+    Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> view = this.view;
+    if (null == view) {
+      this.view = view = new AbstractMap<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger>() {
+        @Nonnull
+        @Override
+        public Set<Entry<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger>> entrySet() {
+          return snapshot().entrySet();
+        }
+      };
+    }
+    return view;
+  }
+
+  @Nonnull
+  @SuppressWarnings("deprecation")
+  private Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> snapshot() {
+    Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> counts = new LinkedHashMap<>();
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (null == stripe) continue;
+      synchronized (stripe) {
+        for (int j = 0; j < stripe.keys.length; j++) {
+          if (null != stripe.keys[j] && stripe.counts[j] > 0) {
+            counts.computeIfAbsent(new RefStream.IdentityWrapper<>((ReferenceCounting) stripe.keys[j]),
+                x -> new AtomicInteger()).addAndGet(stripe.counts[j]);
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableMap(counts);
+  }
+
+  @Nonnull
+  private Stripe stripe() {
+    return stripe(stripeIndex());
+  }
+
+  private static int stripeIndex() {
+    return (int) Thread.currentThread().getId() & (STRIPES - 1);
+  }
+
+  @Nonnull
+  private Stripe stripe(int index) {
+    Stripe stripe = stripes.get(index);
+    if (null == stripe) {
+      stripes.compareAndSet(index, null, new Stripe());
+      stripe = stripes.get(index);
+    }
+    return stripe;
+  }
+
+  /**
+   * Identity-keyed multiset using linear probing. Entries whose count drops to zero keep their slot until the stripe is
+   * cleared, as an element is often stored again by a later stage. {@link #held} is the total count, written under the
+   * stripe's monitor and read without it to skip empty stripes.
+   */
+  @RefIgnore
+  private static final class Stripe {
+    private Object[] keys;
+    private int[] counts;
+    private int size;
+    private volatile int held;
+
+    Stripe() {
+      clear();
+    }
+
+    void add(@Nonnull Object obj, int count) {
+      held += count;
+      int slot = find(obj);
+      if (null == keys[slot]) {
+        keys[slot] = obj;
+        if (++size * 2 > keys.length) {
+          counts[slot] += count;
+          grow();
+          return;
+        }
+      }
+      counts[slot] += count;
+    }
+
+    boolean take(@Nonnull Object obj) {
+      int slot = find(obj);
+      if (null == keys[slot] || counts[slot] <= 0) return false;
+      counts[slot]--;
+      held--;
+      return true;
+    }
+
+    void clear() {
+      keys = new Object[16];
+      counts = new int[16];
+      size = 0;
+      held = 0;
+    }
+
+    private int find(@Nonnull Object obj) {
+      int mask = keys.length - 1;
+      int slot = System.identityHashCode(obj) * 0x9E3779B9 & mask;
+      while (null != keys[slot] && keys[slot] != obj) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void grow() {
+      Object[] oldKeys = keys;
+      int[] oldCounts = counts;
+      keys = new Object[oldKeys.length * 2];
+      counts = new int[oldKeys.length * 2];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (null != oldKeys[i]) {
+          int slot = find(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          counts[slot] = oldCounts[i];
+        }
+      }
+    }
+  }
+}
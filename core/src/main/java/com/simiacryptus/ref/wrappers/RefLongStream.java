@@ -23,8 +23,6 @@ import com.simiacryptus.ref.lang.*;
 
 import javax.annotation.Nonnull;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.stream.LongStream;
 
@@ -32,21 +30,21 @@ import java.util.stream.LongStream;
 @SuppressWarnings("unused")
 public class RefLongStream implements LongStream {
   private final LongStream inner;
-  private final Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> refs;
+  private final RefLedger refs;
   private final List<ReferenceCounting> lambdas;
 
   RefLongStream(@RefAware LongStream stream) {
-    this(stream, new ArrayList<>(), new ConcurrentHashMap<>());
+    this(stream, new ArrayList<>(), new RefLedger());
   }
 
   RefLongStream(@RefAware LongStream stream, @RefAware List<ReferenceCounting> lambdas,
-                @RefAware Map<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
+                @RefAware RefLedger refs) {
     this.lambdas = lambdas;
     this.refs = refs;
     if (stream instanceof ReferenceCounting)
       throw new IllegalArgumentException("inner class cannot be ref-aware");
     this.inner = stream.onClose(() -> {
-      RefStream.freeAll(refs);
+      refs.freeAll();
       synchronized (lambdas) {
         lambdas.forEach(referenceCounting -> referenceCounting.freeRef());
         lambdas.clear();
@@ -71,9 +69,7 @@ public class RefLongStream implements LongStream {
 
   @Nonnull
   public static RefLongStream of(@Nonnull long... array) {
-    return new RefLongStream(LongStream.of(array).onClose(() -> {
-      Arrays.stream(array).forEach(value -> RefUtil.freeRef(value));
-    }));
+    return new RefLongStream(LongStream.of(array));
   }
 
   @Nonnull
@@ -89,7 +85,7 @@ public class RefLongStream implements LongStream {
   @Override
   public boolean allMatch(@Nonnull @RefAware LongPredicate predicate) {
     track(predicate);
-    final boolean allMatch = inner.allMatch((long t) -> predicate.test(getRef(t)));
+    final boolean allMatch = inner.allMatch(predicate);
     close();
     return allMatch;
   }
@@ -97,7 +93,7 @@ public class RefLongStream implements LongStream {
   @Override
   public boolean anyMatch(@Nonnull @RefAware LongPredicate predicate) {
     track(predicate);
-    final boolean anyMatch = inner.anyMatch((long t) -> predicate.test(getRef(t)));
+    final boolean anyMatch = inner.anyMatch(predicate);
     close();
     return anyMatch;
   }
@@ -155,7 +151,7 @@ public class RefLongStream implements LongStream {
   @Nonnull
   public RefLongStream filter(@Nonnull @RefAware LongPredicate predicate) {
     track(predicate);
-    return new RefLongStream(inner.filter((long t) -> predicate.test(RefUtil.addRef(t))), lambdas, refs);
+    return new RefLongStream(inner.filter(predicate), lambdas, refs);
   }
 
   @Override
@@ -176,20 +172,20 @@ public class RefLongStream implements LongStream {
   @Override
   public RefLongStream flatMap(@Nonnull @RefAware LongFunction<? extends LongStream> mapper) {
     track(mapper);
-    return new RefLongStream(inner.flatMap((long t) -> mapper.apply(getRef(t)).map(u -> storeRef(u))), lambdas, refs);
+    return new RefLongStream(inner.flatMap(mapper), lambdas, refs);
   }
 
   @Override
   public void forEach(@Nonnull @RefAware LongConsumer action) {
     track(action);
-    inner.forEach((long t) -> action.accept(getRef(t)));
+    inner.forEach(action);
     close();
   }
 
   @Override
   public void forEachOrdered(@Nonnull @RefAware LongConsumer action) {
     track(action);
-    inner.forEachOrdered((long t) -> action.accept(getRef(t)));
+    inner.forEachOrdered(action);
     close();
   }
 
@@ -214,21 +210,21 @@ public class RefLongStream implements LongStream {
   @Override
   public RefLongStream map(@Nonnull @RefAware LongUnaryOperator mapper) {
     track(mapper);
-    return new RefLongStream(inner.map(t -> storeRef(mapper.applyAsLong(t))), lambdas, refs);
+    return new RefLongStream(inner.map(mapper), lambdas, refs);
   }
 
   @Nonnull
   @Override
   public RefDoubleStream mapToDouble(@Nonnull @RefAware LongToDoubleFunction mapper) {
     track(mapper);
-    return new RefDoubleStream(inner.mapToDouble((long value) -> mapper.applyAsDouble(getRef(value))), lambdas, refs);
+    return new RefDoubleStream(inner.mapToDouble(mapper), lambdas, refs);
   }
 
   @Nonnull
   @Override
   public RefIntStream mapToInt(@Nonnull @RefAware LongToIntFunction mapper) {
     track(mapper);
-    return new RefIntStream(inner.mapToInt((long value) -> mapper.applyAsInt(getRef(value))), lambdas, refs);
+    return new RefIntStream(inner.mapToInt(mapper), lambdas, refs);
   }
 
   @Nonnull
@@ -254,7 +250,7 @@ public class RefLongStream implements LongStream {
   @Override
   public boolean noneMatch(@Nonnull @RefAware LongPredicate predicate) {
     track(predicate);
-    final boolean match = inner.noneMatch((long t) -> predicate.test(getRef(t)));
+    final boolean match = inner.noneMatch(predicate);
     close();
     return match;
   }
@@ -276,14 +272,13 @@ public class RefLongStream implements LongStream {
   @Override
   public RefLongStream peek(@Nonnull @RefAware LongConsumer action) {
     track(action);
-    return new RefLongStream(inner.peek((long t) -> action.accept(getRef(t))), lambdas, refs);
+    return new RefLongStream(inner.peek(action), lambdas, refs);
   }
 
   @Override
   public long reduce(long identity, @Nonnull @RefAware LongBinaryOperator accumulator) {
     track(accumulator);
-    final long reduce = inner.reduce(storeRef(identity),
-        (long t, long u) -> storeRef(accumulator.applyAsLong(getRef(t), getRef(u))));
+    final long reduce = inner.reduce(identity, accumulator);
     close();
     return reduce;
   }
@@ -291,8 +286,7 @@ public class RefLongStream implements LongStream {
   @Override
   public OptionalLong reduce(@Nonnull @RefAware LongBinaryOperator accumulator) {
     track(accumulator);
-    final OptionalLong optionalLong = inner
-        .reduce((long t, long u) -> storeRef(accumulator.applyAsLong(getRef(t), getRef(u))));
+    final OptionalLong optionalLong = inner.reduce(accumulator);
     close();
     return optionalLong;
   }
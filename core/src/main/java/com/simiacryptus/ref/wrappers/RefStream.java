@@ -19,14 +19,13 @@
 
 package com.simiacryptus.ref.wrappers;
 
+import com.simiacryptus.ref.RefSettings;
 import com.simiacryptus.ref.lang.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.lang.reflect.Array;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.stream.*;
@@ -34,33 +33,66 @@ import java.util.stream.*;
 @RefIgnore
 @SuppressWarnings("unused")
 public class RefStream<T> implements Stream<T> {
-  private final Stream<T> inner;
+  private static final boolean FUSION = RefSettings.INSTANCE().streamFusion;
+  private static final Object DROPPED = new Object();
+  @Nullable
+  private final Stream<Object> fusedSource;
+  @Nullable
+  private final Function<Object, Object> fusedStages;
+  private Stream<T> inner;
   public List<ReferenceCounting> lambdas;
-  public Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs;
+  /**
+   * A read-only view of the references this pipeline holds, summed across the ledger's stripes each time it is read.
+   *
+   * @deprecated stored references are kept in a {@link RefLedger}; this view remains only for source compatibility
+   * and does not accept writes.
+   */
+  @Deprecated
+  public final Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs;
+  final RefLedger ledger;
 
   public RefStream(@RefAware Stream<T> stream) {
-    this(stream, new ArrayList<>(), new ConcurrentHashMap<>());
+    this(stream, new ArrayList<>(), new RefLedger());
   }
 
   RefStream(Stream<T> stream,
             @RefAware List<ReferenceCounting> lambdas,
-            @RefAware Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
+            @RefAware RefLedger refs) {
     if (stream instanceof RefStream)
       throw new IllegalArgumentException("inner class cannot be RefStream");
     this.inner = stream.onClose(() -> {
-      freeAll(refs);
+      refs.freeAll();
       synchronized (lambdas) {
         lambdas.forEach(referenceCounting -> referenceCounting.freeRef());
         lambdas.clear();
       }
     });
+    this.fusedSource = null;
+    this.fusedStages = null;
     this.lambdas = lambdas;
-    this.refs = refs;
+    this.ledger = refs;
+    this.refs = refs.asMap();
+  }
+
+  /**
+   * A fused stage chain: map, filter and peek compose into a single function applied
+   * to the elements of {@code source}, which already carries the close handler.
+   * The chain is turned into a real stream stage only once, by {@link #inner()}.
+   */
+  private RefStream(@Nonnull Stream<Object> source,
+                    @Nonnull Function<Object, Object> stages,
+                    List<ReferenceCounting> lambdas,
+                    RefLedger refs) {
+    this.fusedSource = source;
+    this.fusedStages = stages;
+    this.lambdas = lambdas;
+    this.ledger = refs;
+    this.refs = refs.asMap();
   }
 
   @Nonnull
   public Stream<T> getInner() {
-    return new StreamWrapper<T>(inner) {
+    return new StreamWrapper<T>(inner()) {
       @Override
       public @Nonnull
       Iterator<T> iterator() {
@@ -85,7 +117,7 @@ public class RefStream<T> implements Stream<T> {
 
   @Override
   public boolean isParallel() {
-    return getInner().isParallel();
+    return null == inner ? fusedSource.isParallel() : inner.isParallel();
   }
 
   @Nonnull
@@ -137,39 +169,12 @@ public class RefStream<T> implements Stream<T> {
     });
   }
 
-  static void freeAll(
-      @Nonnull @RefAware Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
-    synchronized (refs) {
-      refs.forEach((k, v) -> {
-        final int cnt = v.getAndSet(0);
-        if (cnt > 0)
-          for (int i = 0; i < cnt; i++) {
-            k.inner.freeRef();
-          }
-      });
-      refs.clear();
-    }
-  }
-
   static <U> U getRef(@RefAware U u,
-                      @Nonnull @RefAware Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
+                      @Nonnull @RefAware RefLedger refs) {
     Class<?> uClass = null == u ? Object.class : u.getClass();
     if (!RefUtil.isRefAware(uClass)) return u;
     if (u instanceof ReferenceCounting) {
-      final AtomicInteger refCnt;
-      synchronized (refs) {
-        refCnt = refs.computeIfAbsent(new IdentityWrapper(u), x -> new AtomicInteger(0));
-      }
-      final AtomicBoolean obtained = new AtomicBoolean(false);
-      int newStoredRefs = refCnt.updateAndGet(x -> {
-        if (x <= 0)
-          return 0;
-        else {
-          obtained.set(true);
-          return x - 1;
-        }
-      });
-      if (!obtained.get()) {
+      if (!refs.take((ReferenceCounting) u)) {
         RefUtil.addRef(u);
       }
     } else if (null != u && uClass.isArray()) {
@@ -182,15 +187,11 @@ public class RefStream<T> implements Stream<T> {
   }
 
   static <U> U storeRef(@RefAware U u,
-                        @Nonnull @RefAware Map<IdentityWrapper<ReferenceCounting>, AtomicInteger> refs) {
+                        @Nonnull @RefAware RefLedger refs) {
     Class<?> uClass = null == u ? Object.class : u.getClass();
     if (!RefUtil.isRefAware(uClass)) return u;
     if (u instanceof ReferenceCounting) {
-      AtomicInteger atomicInteger;
-      synchronized (refs) {
-        atomicInteger = refs.computeIfAbsent(new IdentityWrapper(u), x -> new AtomicInteger(0));
-      }
-      atomicInteger.incrementAndGet();
+      refs.store((ReferenceCounting) u);
     } else if (null != u && uClass.isArray()) {
       int length = Array.getLength(u);
       for (int i = 0; i < length; i++) {
@@ -201,21 +202,11 @@ public class RefStream<T> implements Stream<T> {
   }
 
   private static <T> void mergeTrackers(RefStream<T> dest, RefStream<T> source) {
-    mergeCountMaps(dest.refs, source.refs);
+    dest.ledger.merge(source.ledger);
     dest.lambdas.addAll(source.lambdas);
     source.lambdas.clear();
   }
 
-  private static <T> void mergeCountMaps(Map<T, AtomicInteger> dest, Map<T, AtomicInteger> source) {
-    source.forEach((k, v) -> {
-      AtomicInteger atomicInteger;
-      synchronized (dest) {
-        atomicInteger = dest.computeIfAbsent(k, x -> new AtomicInteger(0));
-      }
-      atomicInteger.addAndGet(v.get());
-    });
-    source.clear();
-  }
 
   @Override
   public boolean allMatch(@Nonnull @RefAware Predicate<? super T> predicate) {
@@ -259,9 +250,19 @@ public class RefStream<T> implements Stream<T> {
   public <R, A> R collect(@RefAware Collector<? super T, A, R> collector) {
     if (collector instanceof ReferenceCounting) {
       final Function<A, R> finisher = collector.finisher();
+      final Set<Collector.Characteristics> characteristics = collector.characteristics();
       try {
-        return finisher
-            .apply(this.collect(collector.supplier(), collector.accumulator(), getBiConsumer(collector.combiner())));
+        if (characteristics.contains(Collector.Characteristics.CONCURRENT)
+            && characteristics.contains(Collector.Characteristics.UNORDERED)) {
+          return finisher.apply(collectConcurrent(collector.supplier(), collector.accumulator()));
+        }
+        final BinaryOperator<A> combiner = collector.combiner();
+        try {
+          return finisher
+              .apply(this.collect(collector.supplier(), collector.accumulator(), (t, u) -> storeRef(combiner.apply(t, u))));
+        } finally {
+          RefUtil.freeRef(combiner);
+        }
       } finally {
         close();
         RefUtil.freeRef(finisher);
@@ -287,13 +288,18 @@ public class RefStream<T> implements Stream<T> {
   @Nonnull
   @Override
   public RefStream<T> distinct() {
-    return new RefStream(getInner().distinct(), lambdas, refs);
+    return new RefStream(getInner().distinct(), lambdas, ledger);
   }
 
   @Nonnull
   public RefStream<T> filter(@Nonnull @RefAware Predicate<? super T> predicate) {
     track(predicate);
-    return new RefStream(getInner().filter(t -> predicate.test(RefUtil.addRef(t))), lambdas, refs);
+    if (FUSION) return fuse(t -> {
+      if (predicate.test(RefUtil.addRef((T) t))) return t;
+      RefUtil.freeRef(t);
+      return DROPPED;
+    });
+    return new RefStream(getInner().filter(t -> predicate.test(RefUtil.addRef(t))), lambdas, ledger);
   }
 
   @Nonnull
@@ -319,7 +325,7 @@ public class RefStream<T> implements Stream<T> {
     track(mapper);
     return new RefStream<>(getInner().flatMap((T t) -> mapper.apply(getRef(t))
         //.collect(RefCollectors.toList()).stream()
-        .map(u -> storeRef(u))), lambdas, refs);
+        .map(u -> storeRef(u))), lambdas, ledger);
   }
 
   @Nonnull
@@ -327,7 +333,7 @@ public class RefStream<T> implements Stream<T> {
   public RefDoubleStream flatMapToDouble(
       @Nonnull @RefAware Function<? super T, ? extends DoubleStream> mapper) {
     track(mapper);
-    return new RefDoubleStream(getInner().flatMapToDouble((T t) -> mapper.apply(getRef(t))), lambdas, refs);
+    return new RefDoubleStream(getInner().flatMapToDouble((T t) -> mapper.apply(getRef(t))), lambdas, ledger);
   }
 
   @Nonnull
@@ -335,7 +341,7 @@ public class RefStream<T> implements Stream<T> {
   public RefIntStream flatMapToInt(
       @Nonnull @RefAware Function<? super T, ? extends IntStream> mapper) {
     track(mapper);
-    return new RefIntStream(getInner().flatMapToInt((T t) -> mapper.apply(getRef(t))), lambdas, refs);
+    return new RefIntStream(getInner().flatMapToInt((T t) -> mapper.apply(getRef(t))), lambdas, ledger);
   }
 
   @Nonnull
@@ -346,7 +352,7 @@ public class RefStream<T> implements Stream<T> {
     return new RefLongStream(getInner().flatMapToLong((T t) -> {
       final T ref = getRef(t);
       return mapper.apply(ref);
-    }), lambdas, refs);
+    }), lambdas, ledger);
   }
 
   public void forEach(@Nonnull @RefAware Consumer<? super T> action) {
@@ -376,35 +382,36 @@ public class RefStream<T> implements Stream<T> {
   @Nonnull
   @Override
   public RefStream<T> limit(long maxSize) {
-    return new RefStream(getInner().limit(maxSize), lambdas, refs);
+    return new RefStream(getInner().limit(maxSize), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public <R> RefStream<R> map(@Nonnull @RefAware Function<? super T, ? extends R> mapper) {
     track(mapper);
-    return new RefStream<>(getInner().map(t -> storeRef(mapper.apply(getRef(t)))), lambdas, refs);
+    if (FUSION) return fuse(t -> mapper.apply((T) t));
+    return new RefStream<>(getInner().map(t -> storeRef(mapper.apply(getRef(t)))), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefDoubleStream mapToDouble(@Nonnull @RefAware ToDoubleFunction<? super T> mapper) {
     track(mapper);
-    return new RefDoubleStream(getInner().mapToDouble((T value) -> mapper.applyAsDouble(getRef(value))), lambdas, refs);
+    return new RefDoubleStream(getInner().mapToDouble((T value) -> mapper.applyAsDouble(getRef(value))), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefIntStream mapToInt(@Nonnull @RefAware ToIntFunction<? super T> mapper) {
     track(mapper);
-    return new RefIntStream(getInner().mapToInt((T value) -> mapper.applyAsInt(getRef(value))), lambdas, refs);
+    return new RefIntStream(getInner().mapToInt((T value) -> mapper.applyAsInt(getRef(value))), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefLongStream mapToLong(@Nonnull @RefAware ToLongFunction<? super T> mapper) {
     track(mapper);
-    return new RefLongStream(getInner().mapToLong((T value) -> mapper.applyAsLong(getRef(value))), lambdas, refs);
+    return new RefLongStream(getInner().mapToLong((T value) -> mapper.applyAsLong(getRef(value))), lambdas, ledger);
   }
 
   @Nonnull
@@ -440,20 +447,26 @@ public class RefStream<T> implements Stream<T> {
   @Override
   public RefStream<T> onClose(@RefAware Runnable closeHandler) {
     track(closeHandler);
-    return new RefStream(getInner().onClose(closeHandler), lambdas, refs);
+    if (null == inner) return new RefStream<>(fusedSource.onClose(closeHandler), fusedStages, lambdas, ledger);
+    return new RefStream(getInner().onClose(closeHandler), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefStream<T> parallel() {
-    return new RefStream(getInner().parallel(), lambdas, refs);
+    if (null == inner) return new RefStream<>(fusedSource.parallel(), fusedStages, lambdas, ledger);
+    return new RefStream(getInner().parallel(), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefStream<T> peek(@Nonnull @RefAware Consumer<? super T> action) {
     track(action);
-    return new RefStream(getInner().peek((T t) -> action.accept(getRef(t))), lambdas, refs);
+    if (FUSION) return fuse(t -> {
+      action.accept(RefUtil.addRef((T) t));
+      return t;
+    });
+    return new RefStream(getInner().peek((T t) -> action.accept(RefUtil.addRef(t))), lambdas, ledger);
   }
 
   @Nullable
@@ -497,19 +510,20 @@ public class RefStream<T> implements Stream<T> {
   @Nonnull
   @Override
   public RefStream<T> sequential() {
-    return new RefStream(getInner().sequential(), lambdas, refs);
+    if (null == inner) return new RefStream<>(fusedSource.sequential(), fusedStages, lambdas, ledger);
+    return new RefStream(getInner().sequential(), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefStream<T> skip(long n) {
-    return new RefStream(getInner().skip(n), lambdas, refs);
+    return new RefStream(getInner().skip(n), lambdas, ledger);
   }
 
   @Nonnull
   @Override
   public RefStream<T> sorted() {
-    return new RefStream(getInner().sorted((a, b) -> ((Comparable<T>) a).compareTo(RefUtil.addRef(b))), lambdas, refs);
+    return new RefStream(getInner().sorted((a, b) -> ((Comparable<T>) a).compareTo(RefUtil.addRef(b))), lambdas, ledger);
   }
 
   @Nonnull
@@ -518,7 +532,7 @@ public class RefStream<T> implements Stream<T> {
     return new RefStream(
         getInner().sorted(
             (T o1, T o2) -> comparator.compare(RefUtil.addRef(o1), RefUtil.addRef(o2))
-        ), lambdas, refs).track(comparator);
+        ), lambdas, ledger).track(comparator);
   }
 
   @Nonnull
@@ -540,7 +554,31 @@ public class RefStream<T> implements Stream<T> {
   }
 
   public <U> U storeRef(@RefAware U u) {
-    return storeRef(u, refs);
+    return storeRef(u, ledger);
+  }
+
+  @Nonnull
+  private Stream<T> inner() {
+    if (null == inner) {
+      final Function<Object, Object> stages = fusedStages;
+      inner = (Stream<T>) fusedSource.map(s -> {
+        final Object r = stages.apply(getRef(s));
+        return r == DROPPED ? r : storeRef(r);
+      }).filter(r -> r != DROPPED);
+    }
+    return inner;
+  }
+
+  @Nonnull
+  private <R> RefStream<R> fuse(@Nonnull Function<Object, Object> stage) {
+    if (null == inner) {
+      final Function<Object, Object> upstream = fusedStages;
+      return new RefStream<>(fusedSource, t -> {
+        final Object u = upstream.apply(t);
+        return u == DROPPED ? u : stage.apply(u);
+      }, lambdas, ledger);
+    }
+    return new RefStream<>((Stream<Object>) inner, stage, lambdas, ledger);
   }
 
   @Nonnull
@@ -563,7 +601,8 @@ public class RefStream<T> implements Stream<T> {
   @Nonnull
   @Override
   public RefStream<T> unordered() {
-    return new RefStream(getInner().unordered(), lambdas, refs);
+    if (null == inner) return new RefStream<>(fusedSource.unordered(), fusedStages, lambdas, ledger);
+    return new RefStream(getInner().unordered(), lambdas, ledger);
   }
 
   @Nonnull
@@ -575,17 +614,29 @@ public class RefStream<T> implements Stream<T> {
     return this;
   }
 
-  @Nonnull
-  @RefAware
-  private <A> BiConsumer<A, A> getBiConsumer(@Nonnull @RefAware BinaryOperator<A> combiner) {
-    return RefUtil.wrapInterface((t, u) -> storeRef(combiner.apply(t, u)), combiner);
+  /**
+   * Accumulates every element into a single container, as the JDK does for a concurrent, unordered collector.
+   */
+  private <A> A collectConcurrent(@Nonnull @RefAware Supplier<A> supplier,
+                                  @Nonnull @RefAware BiConsumer<A, ? super T> accumulator) {
+    try {
+      final A container = supplier.get();
+      getInner().forEach(t -> accumulator.accept(RefUtil.addRef(container), getRef(t)));
+      return container;
+    } finally {
+      RefUtil.freeRef(supplier);
+      RefUtil.freeRef(accumulator);
+    }
   }
 
   private <U> U getRef(@RefAware U u) {
-    return getRef(u, this.refs);
+    return getRef(u, this.ledger);
   }
 
-  @RefIgnore
+  /**
+   * @deprecated only used as the key type of the deprecated {@link #refs} view.
+   */
+  @Deprecated
   public static class IdentityWrapper<T> {
     public final T inner;
 
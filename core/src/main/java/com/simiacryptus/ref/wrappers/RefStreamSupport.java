@@ -26,8 +26,6 @@ import com.simiacryptus.ref.lang.ReferenceCounting;
 
 import java.util.ArrayList;
 import java.util.Spliterator;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.StreamSupport;
 
 @RefIgnore
@@ -36,7 +34,7 @@ public class RefStreamSupport {
                                         boolean parallel) {
     if (spliterator instanceof RefSpliterator) {
       final RefSpliterator refSpliterator = (RefSpliterator) spliterator;
-      ConcurrentHashMap<RefStream.IdentityWrapper<ReferenceCounting>, AtomicInteger> refs = new ConcurrentHashMap<>();
+      RefLedger refs = new RefLedger();
       return new RefStream<>(
           StreamSupport.stream(refSpliterator.getInner(), parallel)
               .peek(u -> RefStream.storeRef(RefUtil.addRef(u), refs)),
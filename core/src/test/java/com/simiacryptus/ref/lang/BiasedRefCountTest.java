@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BiasedRefCountTest {
+
+  @Test
+  public void ownerOnly() {
+    Biased obj = new Biased();
+    for (int i = 0; i < 10; i++) obj.addRef();
+    for (int i = 0; i < 10; i++) obj.freeRef();
+    assertEquals(0, obj.frees.get());
+    assertEquals(1, obj.currentRefCount());
+    obj.freeRef();
+    assertTrue(obj.isFreed());
+    assertEquals(1, obj.frees.get());
+    obj.freeRef();
+    assertEquals(1, obj.frees.get());
+  }
+
+  @Test
+  public void releasedByOtherThreadWhileOwnerAlive() throws InterruptedException {
+    Biased obj = new Biased();
+    Thread other = new Thread(obj::freeRef);
+    other.start();
+    other.join();
+    assertFalse(obj.isFreed(), "the owner has not merged yet");
+    ReferenceCountingBase.flushBiasedRefs();
+    assertTrue(obj.isFreed());
+    assertEquals(1, obj.frees.get());
+  }
+
+  @Test
+  public void ownerMergesOnNextBiasedFree() throws InterruptedException {
+    Biased handedOff = new Biased();
+    Thread other = new Thread(handedOff::freeRef);
+    other.start();
+    other.join();
+    new Biased().freeRef();
+    assertTrue(handedOff.isFreed());
+    assertEquals(1, handedOff.frees.get());
+  }
+
+  @Test
+  public void releasedAfterOwnerTerminated() throws InterruptedException {
+    Biased[] obj = new Biased[1];
+    Thread owner = new Thread(() -> {
+      obj[0] = new Biased();
+      obj[0].addRef();
+    });
+    owner.start();
+    owner.join();
+    obj[0].freeRef();
+    assertFalse(obj[0].isFreed());
+    obj[0].freeRef();
+    assertTrue(obj[0].isFreed());
+    assertEquals(1, obj[0].frees.get());
+  }
+
+  @Test
+  public void sweptAfterOwnerTerminatesWithQueuedObject() throws InterruptedException {
+    Biased[] obj = new Biased[1];
+    CountDownLatch created = new CountDownLatch(1);
+    CountDownLatch released = new CountDownLatch(1);
+    Thread owner = new Thread(() -> {
+      obj[0] = new Biased();
+      created.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    owner.start();
+    created.await();
+    obj[0].freeRef();
+    assertFalse(obj[0].isFreed());
+    released.countDown();
+    owner.join();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!obj[0].isFreed() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    assertTrue(obj[0].isFreed(), "swept after the owner terminated");
+    assertEquals(1, obj[0].frees.get());
+  }
+
+  @Test
+  public void concurrentAddAndFree() throws InterruptedException {
+    int threads = 4;
+    List<Biased> objs = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) objs.add(new Biased());
+    for (Biased obj : objs) for (int t = 0; t < threads; t++) obj.addRef();
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread(() -> {
+        for (int r = 0; r < 100; r++) {
+          for (Biased obj : objs) {
+            obj.addRef();
+            obj.freeRef();
+          }
+        }
+        for (Biased obj : objs) obj.freeRef();
+      });
+      workers.add(worker);
+      worker.start();
+    }
+    for (Biased obj : objs) {
+      obj.addRef();
+      obj.freeRef();
+    }
+    for (Thread worker : workers) worker.join();
+    for (Biased obj : objs) {
+      assertFalse(obj.isFreed());
+      obj.freeRef();
+    }
+    ReferenceCountingBase.flushBiasedRefs();
+    for (Biased obj : objs) {
+      assertTrue(obj.isFreed());
+      assertEquals(1, obj.frees.get());
+    }
+  }
+
+  @BiasedRefCount
+  private static class Biased extends ReferenceCountingBase {
+    final AtomicInteger frees = new AtomicInteger();
+
+    @Override
+    protected void _free() {
+      frees.incrementAndGet();
+      super._free();
+    }
+  }
+}
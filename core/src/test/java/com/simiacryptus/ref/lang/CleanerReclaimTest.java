@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CleanerReclaimTest {
+  static {
+    System.setProperty("CLEANER_ENABLE", "true");
+  }
+
+  @Test
+  public void leakedObjectIsReclaimed() throws InterruptedException {
+    AtomicInteger releases = new AtomicInteger();
+    leak(releases);
+    awaitGc(() -> releases.get() > 0);
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void freedObjectIsReleasedOnce() throws InterruptedException {
+    AtomicInteger releases = new AtomicInteger();
+    free(releases);
+    assertEquals(1, releases.get());
+    awaitGc(() -> false);
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void leakedBufferIsRecycled() throws InterruptedException {
+    RecycleBin<double[]> bin = RecycleBin.DOUBLES;
+    bin.clear();
+    PooledBuffer.doubles(1000);
+    awaitGc(() -> bin.getPooledLength() > 0);
+    assertEquals(1000, bin.getPooledLength());
+  }
+
+  private static void leak(AtomicInteger releases) {
+    new Resource(releases);
+  }
+
+  private static void free(AtomicInteger releases) {
+    new Resource(releases).freeRef();
+  }
+
+  private static void awaitGc(BooleanSupplier done) throws InterruptedException {
+    for (int i = 0; i < 50 && !done.getAsBoolean(); i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+  }
+
+  private static class Resource extends ReferenceCountingBase {
+    private final Release release;
+
+    Resource(AtomicInteger releases) {
+      release = new Release(releases);
+      addReclaimAction(release);
+    }
+
+    @Override
+    protected void _free() {
+      release.run();
+      super._free();
+    }
+  }
+
+  private static class Release implements Runnable {
+    private final AtomicInteger releases;
+
+    Release(AtomicInteger releases) {
+      this.releases = releases;
+    }
+
+    @Override
+    public void run() {
+      assertTrue(releases.incrementAndGet() <= 1);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DirectBuffersTest {
+
+  @Test
+  public void viewsUseNativeOrder() {
+    ByteBuffer bytes = DirectBuffers.allocateBytes(64);
+    DoubleBuffer doubles = DirectBuffers.allocateDoubles(8);
+    FloatBuffer floats = DirectBuffers.allocateFloats(16);
+    assertEquals(ByteOrder.nativeOrder(), bytes.order());
+    assertEquals(ByteOrder.nativeOrder(), doubles.order());
+    assertEquals(ByteOrder.nativeOrder(), floats.order());
+    assertEquals(64, bytes.capacity());
+    DirectBuffers.free(bytes);
+    DirectBuffers.free(doubles);
+    DirectBuffers.free(floats);
+  }
+
+  @Test
+  public void bytesAreAligned() {
+    ByteBuffer bytes = DirectBuffers.allocateBytes(100);
+    assertEquals(0, bytes.alignmentOffset(0, DirectBuffers.getAlignment()));
+    DirectBuffers.free(bytes);
+  }
+}
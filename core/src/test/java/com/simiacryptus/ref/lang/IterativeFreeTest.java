@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IterativeFreeTest {
+  static {
+    System.setProperty("ITERATIVE_FREE", "true");
+  }
+
+  @Test
+  public void deepChain() {
+    List<Node> nodes = new ArrayList<>();
+    Node head = null;
+    for (int i = 0; i < 200000; i++) {
+      head = new Node(head);
+      nodes.add(head);
+    }
+    head.freeRef();
+    for (Node node : nodes) assertTrue(node.isFreed());
+  }
+
+  @Test
+  public void firstExceptionRethrownWithLaterOnesSuppressed() {
+    Failing first = new Failing("first");
+    Node middle = new Node(null);
+    Failing last = new Failing("last");
+    Parent parent = new Parent(first, middle, last);
+    RuntimeException e = assertThrows(RuntimeException.class, parent::freeRef);
+    assertEquals("first", e.getMessage());
+    assertEquals(1, e.getSuppressed().length);
+    assertEquals("last", e.getSuppressed()[0].getMessage());
+    assertTrue(parent.isFreed());
+    assertTrue(middle.isFreed(), "frees queued after a failure still run");
+    assertTrue(last.isFreed());
+  }
+
+  private static class Node extends ReferenceCountingBase {
+    @Nullable
+    private final Node next;
+
+    Node(@Nullable Node next) {
+      this.next = next;
+    }
+
+    @Override
+    protected void _free() {
+      if (null != next) next.freeRef();
+      super._free();
+    }
+  }
+
+  private static class Failing extends ReferenceCountingBase {
+    private final String message;
+
+    Failing(String message) {
+      this.message = message;
+    }
+
+    @Override
+    protected void _free() {
+      super._free();
+      throw new RuntimeException(message);
+    }
+  }
+
+  private static class Parent extends ReferenceCountingBase {
+    private final ReferenceCountingBase[] children;
+
+    Parent(ReferenceCountingBase... children) {
+      this.children = children;
+    }
+
+    @Override
+    protected void _free() {
+      for (ReferenceCountingBase child : children) child.freeRef();
+      super._free();
+    }
+  }
+}
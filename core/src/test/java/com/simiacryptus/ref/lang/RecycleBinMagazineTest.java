@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class RecycleBinMagazineTest {
+
+  @Test
+  public void clearReachesOtherThreads() throws InterruptedException {
+    CountingBin bin = new CountingBin();
+    CountDownLatch done = new CountDownLatch(1);
+    Thread worker = recycleAndWait(bin, 3, done);
+    assertEquals(3 * 100, bin.getPooledLength());
+    assertEquals(3 * 100, bin.clear());
+    assertEquals(0, bin.getPooledLength());
+    assertEquals(3, bin.frees.get());
+    done.countDown();
+    worker.join();
+  }
+
+  @Test
+  public void evictionReachesOtherThreads() throws InterruptedException {
+    CountingBin bin = new CountingBin();
+    CountDownLatch done = new CountDownLatch(1);
+    Thread worker = recycleAndWait(bin, 3, done);
+    assertEquals(3 * 100, bin.evict(Long.MAX_VALUE));
+    assertEquals(0, bin.getPooledLength());
+    assertEquals(3, bin.frees.get());
+    done.countDown();
+    worker.join();
+  }
+
+  @Test
+  public void terminatedThreadReturnsMagazines() throws InterruptedException {
+    CountingBin bin = new CountingBin();
+    bin.setPurgeFreq(60);
+    double[][] recycled = new double[1][];
+    Thread worker = new Thread(() -> {
+      recycled[0] = new double[100];
+      bin.recycle(recycled[0], 100);
+    });
+    worker.start();
+    worker.join();
+    long deadline = System.currentTimeMillis() + 10000;
+    double[] obtained = null;
+    while (System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(100);
+      obtained = bin.obtain(100);
+      if (obtained == recycled[0]) break;
+    }
+    assertSame(recycled[0], obtained, "the terminated thread's magazine reached the depot");
+    assertEquals(0, bin.frees.get());
+  }
+
+  private static Thread recycleAndWait(CountingBin bin, int count, CountDownLatch done) throws InterruptedException {
+    CountDownLatch recycled = new CountDownLatch(1);
+    Thread worker = new Thread(() -> {
+      for (int i = 0; i < count; i++) bin.recycle(new double[100], 100);
+      recycled.countDown();
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    worker.start();
+    recycled.await();
+    return worker;
+  }
+
+  private static class CountingBin extends RecycleBin<double[]> {
+    final AtomicInteger frees = new AtomicInteger();
+
+    CountingBin() {
+      setMagazineSize(4);
+    }
+
+    @Override
+    public double[] create(long length) {
+      return new double[(int) length];
+    }
+
+    @Override
+    public void reset(double[] data, long size) {
+    }
+
+    @Override
+    protected void free(double[] obj) {
+      frees.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefClosuresTest {
+
+  @Test
+  public void lambdaForwardsObjectMethods() {
+    Function<Integer, Integer> fn = x -> x + 1;
+    Function<Integer, Integer> wrapped = RefUtil.wrapInterface(fn);
+    assertFalse(Proxy.isProxyClass(wrapped.getClass()));
+    assertEquals(2, (int) wrapped.apply(1));
+    assertEquals(fn.toString(), wrapped.toString());
+    assertEquals(fn.hashCode(), wrapped.hashCode());
+    assertTrue(wrapped.equals(fn));
+    RefUtil.freeRef(wrapped);
+  }
+
+  @Test
+  public void overriddenDefaultMethodIsForwarded() {
+    Comparator<Integer> natural = new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Integer.compare(a, b);
+      }
+
+      @Override
+      public Comparator<Integer> reversed() {
+        return this;
+      }
+    };
+    Comparator<Integer> wrapped = RefUtil.wrapInterface(natural);
+    assertSame(natural, wrapped.reversed());
+    assertEquals(-1, wrapped.compare(1, 2));
+    RefUtil.freeRef(wrapped);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.wrappers;
+
+import com.simiacryptus.ref.lang.ReferenceCountingBase;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Refcounted test elements that remember every instance created, so a test can check that each was freed exactly once.
+ */
+class Nodes {
+  private final Queue<Node> created = new ConcurrentLinkedQueue<>();
+
+  Node create(long value) {
+    Node node = new Node(value);
+    created.add(node);
+    return node;
+  }
+
+  Node[] range(int count) {
+    Node[] nodes = new Node[count];
+    for (int i = 0; i < count; i++) nodes[i] = create(i);
+    return nodes;
+  }
+
+  void assertBalanced() {
+    for (Node node : created) {
+      assertTrue(node.isFreed());
+      assertEquals(1, node.frees.get());
+    }
+  }
+
+  static final class Node extends ReferenceCountingBase {
+    final long value;
+    final AtomicInteger frees = new AtomicInteger();
+
+    private Node(long value) {
+      this.value = value;
+    }
+
+    @Override
+    protected void _free() {
+      frees.incrementAndGet();
+      super._free();
+    }
+  }
+}
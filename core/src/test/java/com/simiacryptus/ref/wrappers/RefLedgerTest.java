@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.wrappers;
+
+import com.simiacryptus.ref.wrappers.Nodes.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RefLedgerTest {
+
+  @Test
+  public void takenByAnotherThread() throws InterruptedException {
+    RefLedger ledger = new RefLedger();
+    Node node = new Nodes().create(0);
+    Thread worker = new Thread(() -> {
+      node.addRef();
+      ledger.store(node);
+    });
+    worker.start();
+    worker.join();
+    assertTrue(ledger.take(node), "stored by another thread");
+    assertFalse(ledger.take(node));
+    node.freeRef();
+    assertEquals(1, node.currentRefCount());
+    ledger.freeAll();
+    assertEquals(1, node.currentRefCount());
+    node.freeRef();
+    assertTrue(node.isFreed());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void refsViewCountsStoredReferences() throws InterruptedException {
+    RefStream<Node> stream = new RefStream<>(Stream.empty());
+    Node node = new Nodes().create(0);
+    node.addRef();
+    stream.storeRef(node);
+    Thread worker = new Thread(() -> {
+      node.addRef();
+      stream.storeRef(node);
+    });
+    worker.start();
+    worker.join();
+    assertEquals(2, stream.refs.get(new RefStream.IdentityWrapper<>(node)).get());
+    assertThrows(UnsupportedOperationException.class, () -> stream.refs.clear());
+    stream.close();
+    assertEquals(1, node.currentRefCount());
+    node.freeRef();
+    assertTrue(node.isFreed());
+  }
+
+  @Test
+  public void parallelStreamBalances() {
+    Nodes nodes = new Nodes();
+    int count = 2000;
+    Optional<Node> result = RefArrays.stream(nodes.range(count)).parallel().map(node -> {
+      Node mapped = nodes.create(node.value);
+      node.freeRef();
+      return mapped;
+    }).reduce((a, b) -> {
+      Node sum = nodes.create(a.value + b.value);
+      a.freeRef();
+      b.freeRef();
+      return sum;
+    });
+    assertTrue(result.isPresent());
+    assertEquals((long) count * (count - 1) / 2, result.get().value);
+    result.get().freeRef();
+    nodes.assertBalanced();
+  }
+}
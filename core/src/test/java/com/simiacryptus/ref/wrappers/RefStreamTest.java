@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.ref.wrappers;
+
+import com.simiacryptus.ref.wrappers.Nodes.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs with STREAM_FUSION off; {@link FusedRefStreamTest} runs the same pipelines with it on.
+ */
+public class RefStreamTest {
+
+  @Test
+  public void mapPeekFilterMap() {
+    Nodes nodes = new Nodes();
+    AtomicLong peeked = new AtomicLong();
+    Node[] result = RefArrays.stream(nodes.range(100)).map(node -> {
+      Node doubled = nodes.create(node.value * 2);
+      node.freeRef();
+      return doubled;
+    }).peek(node -> {
+      peeked.addAndGet(node.value);
+      node.freeRef();
+    }).filter(node -> {
+      boolean keep = node.value % 4 == 0;
+      node.freeRef();
+      return keep;
+    }).map(node -> {
+      Node next = nodes.create(node.value + 1);
+      node.freeRef();
+      return next;
+    }).toArray(Node[]::new);
+    assertEquals(9900, peeked.get());
+    assertEquals(50, result.length);
+    for (int i = 0; i < result.length; i++) {
+      assertEquals(i * 4 + 1, result[i].value);
+      assertEquals(1, result[i].currentRefCount());
+      result[i].freeRef();
+    }
+    nodes.assertBalanced();
+  }
+
+  @Test
+  public void peekSource() {
+    Nodes nodes = new Nodes();
+    AtomicLong peeked = new AtomicLong();
+    Node[] result = RefArrays.stream(nodes.range(100)).peek(node -> {
+      peeked.addAndGet(node.value);
+      node.freeRef();
+    }).toArray(Node[]::new);
+    assertEquals(4950, peeked.get());
+    assertEquals(100, result.length);
+    for (Node node : result) {
+      assertEquals(1, node.currentRefCount());
+      node.freeRef();
+    }
+    nodes.assertBalanced();
+  }
+
+  @Test
+  public void parallelMapPeekReduce() {
+    Nodes nodes = new Nodes();
+    AtomicLong peeked = new AtomicLong();
+    Node sum = RefArrays.stream(nodes.range(1000)).parallel().map(node -> {
+      Node copy = nodes.create(node.value);
+      node.freeRef();
+      return copy;
+    }).peek(node -> {
+      peeked.addAndGet(node.value);
+      node.freeRef();
+    }).reduce((a, b) -> {
+      Node total = nodes.create(a.value + b.value);
+      a.freeRef();
+      b.freeRef();
+      return total;
+    }).get();
+    assertEquals(499500, peeked.get());
+    assertEquals(499500, sum.value);
+    sum.freeRef();
+    nodes.assertBalanced();
+  }
+}